@@ -0,0 +1,113 @@
+package com.evacipated.cardcrawl.modthespire;
+
+import com.evacipated.cardcrawl.modthespire.lib.SpireOverride;
+import com.evacipated.cardcrawl.modthespire.patcher.Rewrite;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.annotation.Annotation;
+import org.openjdk.jmh.annotations.*;
+import org.scannotation.AnnotationDB;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+// Patcher.patchOverrides on one superclass with a lot of private methods, all of them overridden by one
+// subclass with @SpireOverride. Each override used to get its own MyCodeConverter and its own pass over
+// the superclass, now the superclass is instrumented once with a converter for all of them
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OverridePatchBenchmark
+{
+    private static final String BASE = "com.megacrit.cardcrawl.bench.Base";
+    private static final String MODDED = "com.evacipated.cardcrawl.modthespire.bench.Modded";
+
+    @Param({"10", "50", "200"})
+    public int overrides;
+
+    @Param({"true", "false"})
+    public boolean perSuperclass;
+
+    private PatchSession session;
+    private PrintStream out;
+
+    @Setup(Level.Trial)
+    public void quiet()
+    {
+        // patchOverrides reports progress on every call
+        out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b)
+            {
+            }
+        }));
+    }
+
+    @TearDown(Level.Trial)
+    public void restore()
+    {
+        System.setOut(out);
+    }
+
+    // instrument() changes the classes, so every call gets fresh ones
+    @Setup(Level.Invocation)
+    public void generate() throws Exception
+    {
+        ClassPool pool = new ClassPool(true);
+        makeClasses(pool, overrides);
+
+        AnnotationDB db = new AnnotationDB();
+        db.getAnnotationIndex().put(SpireOverride.class.getName(), Collections.singleton(MODDED));
+        session = new PatchSession(new ModInfo[0], pool, "bench");
+        session.getContext().setUses(Rewrite.SUPERCLASS_OVERRIDES, perSuperclass);
+        session.getAnnotationDBMap().put(new URL("file:bench.jar"), db);
+        session.activate();
+    }
+
+    @Benchmark
+    public PatchSession patchOverrides() throws Exception
+    {
+        Patcher.patchOverrides(session);
+        return session;
+    }
+
+    // A superclass with count private methods and a method calling each of them,
+    // and a subclass overriding every one of them and calling through to the original
+    static void makeClasses(ClassPool pool, int count) throws Exception
+    {
+        CtClass base = pool.makeClass(BASE);
+        StringBuilder useAll = new StringBuilder("public String useAll(int n) { String s = \"\";");
+        for (int i=0; i<count; ++i) {
+            base.addMethod(CtNewMethod.make("private String m" + i + "(int n) { return \"m" + i + ":\" + (n + " + i + "); }", base));
+            useAll.append(" s += m").append(i).append("(n);");
+        }
+        useAll.append(" return s; }");
+        base.addMethod(CtNewMethod.make(useAll.toString(), base));
+
+        CtClass modded = pool.makeClass(MODDED, base);
+        ConstPool constPool = modded.getClassFile().getConstPool();
+        for (int i=0; i<count; ++i) {
+            CtMethod method = CtNewMethod.make(
+                "protected String m" + i + "(int n) {"
+                    + " return \"modded \" + com.evacipated.cardcrawl.modthespire.lib.SpireSuper.call(new Object[]{ Integer.valueOf(n) });"
+                    + " }",
+                modded
+            );
+            AnnotationsAttribute attr = new AnnotationsAttribute(constPool, AnnotationsAttribute.visibleTag);
+            attr.addAnnotation(new Annotation(SpireOverride.class.getName(), constPool));
+            method.getMethodInfo().addAttribute(attr);
+            modded.addMethod(method);
+        }
+    }
+}
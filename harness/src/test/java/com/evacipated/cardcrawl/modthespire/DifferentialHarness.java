@@ -0,0 +1,241 @@
+package com.evacipated.cardcrawl.modthespire;
+
+import com.evacipated.cardcrawl.modthespire.patcher.PatchContext;
+import com.evacipated.cardcrawl.modthespire.patcher.Rewrite;
+import javassist.CtClass;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Runs the patcher over the synthetic game and the patch corpus with a chosen set of its rewrites,
+// the same way Loader does, and keeps everything it produced for DifferentialHarnessTest to compare
+class DifferentialHarness
+{
+    static final String GAME_PACKAGE = "com.megacrit.cardcrawl.harness";
+    static final String CORPUS_PACKAGE = "com.evacipated.cardcrawl.modthespire.harness.corpus";
+
+    // Which rewrites a run uses. Bytecode enums and forced outlining are Loader flags,
+    // outlining is forced whenever it's on so the small corpus methods actually get outlined
+    static class Engine
+    {
+        final String name;
+        final Set<Rewrite> rewrites;
+        final boolean bytecodeEnums;
+
+        Engine(String name, Set<Rewrite> rewrites, boolean bytecodeEnums)
+        {
+            this.name = name;
+            this.rewrites = rewrites;
+            this.bytecodeEnums = bytecodeEnums;
+        }
+
+        static Engine baseline()
+        {
+            return new Engine("baseline", EnumSet.noneOf(Rewrite.class), false);
+        }
+
+        static Engine optimized()
+        {
+            return new Engine("optimized", EnumSet.allOf(Rewrite.class), true);
+        }
+
+        static Engine only(Rewrite rewrite)
+        {
+            return new Engine(rewrite.name(), EnumSet.of(rewrite), false);
+        }
+
+        static Engine bytecodeEnums()
+        {
+            return new Engine("BYTECODE_ENUMS", EnumSet.noneOf(Rewrite.class), true);
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+
+    static class Output
+    {
+        final Engine engine;
+        final PatchSession session;
+        // Patched classes are already defined in here, everything else loads from the jars
+        final MTSClassLoader loader;
+        // Every game and corpus class as it is after patching, plus anything patching generated
+        final SortedMap<String, byte[]> classes;
+        final Set<String> patched;
+
+        Output(Engine engine, PatchSession session, MTSClassLoader loader, SortedMap<String, byte[]> classes, Set<String> patched)
+        {
+            this.engine = engine;
+            this.session = session;
+            this.loader = loader;
+            this.classes = classes;
+            this.patched = patched;
+        }
+    }
+
+    static Output run(Engine engine, File game, File corpus) throws Exception
+    {
+        URL[] urls = {corpus.toURI().toURL(), game.toURI().toURL()};
+        ClassLoader parent = new HidingClassLoader(DifferentialHarness.class.getClassLoader(), GAME_PACKAGE + ".", CORPUS_PACKAGE + ".");
+        MTSClassLoader loader = new MTSClassLoader(emptyJar(), urls, parent);
+        MTSClassPool pool = new MTSClassPool(loader);
+        PatchSession session = new PatchSession(new ModInfo[0], pool, "harness");
+        session.setPatchingLoader(new MTSClassLoader(emptyJar(), urls, parent));
+        // Switch maps are indexed from the game jar
+        session.setGameJar(game.getPath());
+        PatchContext context = session.getContext();
+        for (Rewrite rewrite : Rewrite.values()) {
+            context.setUses(rewrite, engine.rewrites.contains(rewrite));
+        }
+        context.setBytecodeEnums(engine.bytecodeEnums);
+        context.setOutlinePatches(engine.rewrites.contains(Rewrite.OUTLINING));
+        context.setVerifyPatches(true);
+        session.activate();
+
+        Patcher.indexHierarchy(session, urls);
+        Patcher.patchEnums(session, corpus.toURI().toURL());
+        Patcher.extendEnums(session);
+        Patcher.injectPatches(session, Patcher.findPatches(session, new URL[]{corpus.toURI().toURL()}));
+        Patcher.patchOverrides(session);
+        Patcher.finalizePatches(session);
+        Patcher.compilePatches(session, loader);
+        session.closePatchingLoader();
+        Patcher.bustEnums(session, loader, corpus.toURI().toURL());
+
+        SortedMap<String, byte[]> classes = new TreeMap<>();
+        readClasses(game, classes);
+        readClasses(corpus, classes);
+        Set<String> patched = new TreeSet<>();
+        for (CtClass ctClass : pool.getOutJarClasses()) {
+            classes.put(ctClass.getName(), ctClass.toBytecode());
+            patched.add(ctClass.getName());
+        }
+        return new Output(engine, session, loader, classes, patched);
+    }
+
+    // Stands in for the bundled core patches. ZipOutputStream won't write a zip without entries,
+    // so this is just the end of central directory record
+    static InMemoryJar emptyJar() throws IOException
+    {
+        byte[] bytes = new byte[22];
+        bytes[0] = 'P';
+        bytes[1] = 'K';
+        bytes[2] = 5;
+        bytes[3] = 6;
+        return new InMemoryJar(new ByteArrayInputStream(bytes));
+    }
+
+    // Every class in the package and below it, from the test classes directory
+    static File packJar(File file, String pkg) throws IOException
+    {
+        URL url = DifferentialHarness.class.getClassLoader().getResource(pkg.replace('.', '/'));
+        if (url == null || !url.getProtocol().equals("file")) {
+            throw new IOException("Can't list " + pkg + " from " + url);
+        }
+        Path root;
+        try {
+            root = Paths.get(url.toURI());
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        Path classesDir = root;
+        for (int i = pkg.split("\\.").length; i > 0; --i) {
+            classesDir = classesDir.getParent();
+        }
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(p -> p.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+        }
+        try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(file))) {
+            for (Path path : files) {
+                jar.putNextEntry(new JarEntry(classesDir.relativize(path).toString().replace(File.separatorChar, '/')));
+                jar.write(Files.readAllBytes(path));
+            }
+        }
+        return file;
+    }
+
+    private static void readClasses(File jarFile, Map<String, byte[]> classes) throws IOException
+    {
+        try (JarFile jar = new JarFile(jarFile)) {
+            for (JarEntry entry : Collections.list(jar.entries())) {
+                if (entry.getName().endsWith(".class")) {
+                    String name = entry.getName().substring(0, entry.getName().length() - ".class".length()).replace('/', '.');
+                    try (InputStream is = jar.getInputStream(entry)) {
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        byte[] buf = new byte[8192];
+                        int n;
+                        while ((n = is.read(buf)) != -1) {
+                            bytes.write(buf, 0, n);
+                        }
+                        classes.put(name, bytes.toByteArray());
+                    }
+                }
+            }
+        }
+    }
+
+    // The game and corpus are compiled into the test classes, so they're on the classpath above
+    // the patched loader too. Hiding them there makes the loader take every one of them from the jars,
+    // otherwise an unpatched class from the classpath could end up linked against the patched ones
+    private static class HidingClassLoader extends ClassLoader
+    {
+        private final String[] hidden;
+
+        HidingClassLoader(ClassLoader parent, String... hidden)
+        {
+            super(parent);
+            this.hidden = hidden;
+        }
+
+        private boolean isHidden(String name)
+        {
+            for (String prefix : hidden) {
+                if (name.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+        {
+            if (isHidden(name)) {
+                throw new ClassNotFoundException(name);
+            }
+            return super.loadClass(name, resolve);
+        }
+
+        @Override
+        public URL getResource(String name)
+        {
+            if (isHidden(name.replace('/', '.'))) {
+                return null;
+            }
+            return super.getResource(name);
+        }
+
+        @Override
+        public Enumeration<URL> getResources(String name) throws IOException
+        {
+            if (isHidden(name.replace('/', '.'))) {
+                return Collections.emptyEnumeration();
+            }
+            return super.getResources(name);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.evacipated.cardcrawl.modthespire;
+
+import com.evacipated.cardcrawl.modthespire.harness.Scenario;
+import com.evacipated.cardcrawl.modthespire.harness.Scenarios;
+import com.evacipated.cardcrawl.modthespire.patcher.Rewrite;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.util.CheckClassAdapter;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+// Patches the synthetic game with the corpus once with none of the patcher's rewrites (the engine as it was
+// before them) and once per engine below, then holds every engine to the baseline:
+// the output has to verify, keep the same shape, and behave the same when the scenarios are replayed
+@RunWith(Parameterized.class)
+public class DifferentialHarnessTest
+{
+    @ClassRule
+    public static TemporaryFolder tmp = new TemporaryFolder();
+
+    private static File game;
+    private static File corpus;
+    private static DifferentialHarness.Output baseline;
+    private static final Map<String, DifferentialHarness.Output> outputs = new HashMap<>();
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<DifferentialHarness.Engine> engines()
+    {
+        List<DifferentialHarness.Engine> engines = new ArrayList<>();
+        for (Rewrite rewrite : Rewrite.values()) {
+            engines.add(DifferentialHarness.Engine.only(rewrite));
+        }
+        engines.add(DifferentialHarness.Engine.bytecodeEnums());
+        engines.add(DifferentialHarness.Engine.optimized());
+        return engines;
+    }
+
+    @Parameterized.Parameter
+    public DifferentialHarness.Engine engine;
+
+    @BeforeClass
+    public static void patchBaseline() throws Exception
+    {
+        game = DifferentialHarness.packJar(tmp.newFile("game.jar"), DifferentialHarness.GAME_PACKAGE);
+        corpus = DifferentialHarness.packJar(tmp.newFile("corpus.jar"), DifferentialHarness.CORPUS_PACKAGE);
+        baseline = DifferentialHarness.run(DifferentialHarness.Engine.baseline(), game, corpus);
+    }
+
+    private DifferentialHarness.Output output() throws Exception
+    {
+        DifferentialHarness.Output output = outputs.get(engine.name);
+        if (output == null) {
+            output = DifferentialHarness.run(engine, game, corpus);
+            outputs.put(engine.name, output);
+        }
+        return output;
+    }
+
+    @Test
+    public void verifies() throws Exception
+    {
+        for (DifferentialHarness.Output out : Arrays.asList(baseline, output())) {
+            for (String name : out.patched) {
+                StringWriter errors = new StringWriter();
+                CheckClassAdapter.verify(new ClassReader(out.classes.get(name)), out.loader, false, new PrintWriter(errors));
+                assertEquals(out.engine + ": " + name, "", errors.toString());
+            }
+        }
+    }
+
+    @Test
+    public void sameStructure() throws Exception
+    {
+        DifferentialHarness.Output output = output();
+        assertEquals(baseline.patched, output.patched);
+        for (String name : baseline.classes.keySet()) {
+            assertTrue(name, output.classes.containsKey(name));
+            assertEquals(name, structure(baseline.classes.get(name)), structure(output.classes.get(name)));
+        }
+    }
+
+    @Test
+    public void sameBehaviour() throws Exception
+    {
+        DifferentialHarness.Output output = output();
+        for (Scenario scenario : Scenarios.all()) {
+            List<String> expected = scenario.replay(baseline.loader);
+            assertFalse(scenario.name, expected.isEmpty());
+            assertEquals(scenario.name, expected, scenario.replay(output.loader));
+        }
+    }
+
+    // Guards against the harness comparing the baseline with itself because a rewrite silently stopped applying
+    @Test
+    public void optimizedDiffers() throws Exception
+    {
+        if (!engine.name.equals("optimized")) {
+            return;
+        }
+        DifferentialHarness.Output output = output();
+        String monster = DifferentialHarness.GAME_PACKAGE + ".Monster";
+        assertFalse(hasOutlined(baseline.classes.get(monster)));
+        assertTrue(hasOutlined(output.classes.get(monster)));
+        assertFalse(hasIndy(baseline.classes.get(monster)));
+        assertTrue(hasIndy(output.classes.get(monster)));
+        assertTrue(output.session.extendedEnums.contains(DifferentialHarness.GAME_PACKAGE + ".Intent"));
+        assertTrue(baseline.session.extendedEnums.isEmpty());
+    }
+
+    // Sessions share nothing, so two running at once patch exactly what they do one after the other
+    @Test
+    public void concurrentSessions() throws Exception
+    {
+        if (!engine.name.equals("optimized")) {
+            return;
+        }
+        DifferentialHarness.Output output = output();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<DifferentialHarness.Output> plain = pool.submit(() -> DifferentialHarness.run(DifferentialHarness.Engine.baseline(), game, corpus));
+            Future<DifferentialHarness.Output> optimized = pool.submit(() -> DifferentialHarness.run(engine, game, corpus));
+            assertSameClasses(baseline, plain.get());
+            assertSameClasses(output, optimized.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertSameClasses(DifferentialHarness.Output expected, DifferentialHarness.Output actual)
+    {
+        assertEquals(expected.patched, actual.patched);
+        for (String name : expected.patched) {
+            assertArrayEquals(expected.engine + ": " + name, expected.classes.get(name), actual.classes.get(name));
+        }
+    }
+
+    private static ClassNode read(byte[] bytes)
+    {
+        ClassNode node = new ClassNode();
+        new ClassReader(bytes).accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG);
+        return node;
+    }
+
+    // What other classes can see of a class. Synthetic members are left out, outlining adds its helpers as those
+    private static List<String> structure(byte[] bytes)
+    {
+        ClassNode node = read(bytes);
+        List<String> members = new ArrayList<>();
+        members.add("class " + node.access + " " + node.name + " extends " + node.superName + " implements " + node.interfaces);
+        List<String> sorted = new ArrayList<>();
+        for (FieldNode field : node.fields) {
+            if ((field.access & Opcodes.ACC_SYNTHETIC) == 0) {
+                sorted.add("field " + field.access + " " + field.name + " " + field.desc);
+            }
+        }
+        for (MethodNode method : node.methods) {
+            if ((method.access & Opcodes.ACC_SYNTHETIC) == 0) {
+                sorted.add("method " + method.access + " " + method.name + method.desc + " throws " + method.exceptions);
+            }
+        }
+        Collections.sort(sorted);
+        members.addAll(sorted);
+        return members;
+    }
+
+    private static boolean hasOutlined(byte[] bytes)
+    {
+        for (MethodNode method : read(bytes).methods) {
+            if (method.name.contains("outline")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasIndy(byte[] bytes)
+    {
+        ClassNode node = new ClassNode();
+        new ClassReader(bytes).accept(node, 0);
+        for (MethodNode method : node.methods) {
+            for (AbstractInsnNode insn : method.instructions.toArray()) {
+                if (insn.getOpcode() == Opcodes.INVOKEDYNAMIC) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,121 @@
+package com.evacipated.cardcrawl.modthespire.harness;
+
+import java.lang.reflect.*;
+import java.util.ArrayList;
+import java.util.List;
+
+// What a scenario runs against: the classes one engine patched, reached by name through reflection.
+// Every call is written to the Trace with its result or the exception it threw
+public class Replay
+{
+    private final ClassLoader loader;
+
+    public Replay(ClassLoader loader)
+    {
+        this.loader = loader;
+    }
+
+    public Class<?> type(String name) throws ClassNotFoundException
+    {
+        return Class.forName(name, true, loader);
+    }
+
+    public Object create(String className, Object... args) throws Exception
+    {
+        Class<?> cls = type(className);
+        for (Constructor<?> ctor : cls.getDeclaredConstructors()) {
+            if (ctor.getParameterCount() == args.length) {
+                ctor.setAccessible(true);
+                Object ret = ctor.newInstance(args);
+                Trace.record("new " + cls.getSimpleName() + show(args));
+                return ret;
+            }
+        }
+        throw new NoSuchMethodException(className + ".<init> with " + args.length + " argument(s)");
+    }
+
+    public Object call(Object target, String methodName, Object... args) throws Exception
+    {
+        return invoke(target.getClass(), target, methodName, args);
+    }
+
+    public Object callStatic(String className, String methodName, Object... args) throws Exception
+    {
+        return invoke(type(className), null, methodName, args);
+    }
+
+    private Object invoke(Class<?> cls, Object target, String methodName, Object[] args) throws Exception
+    {
+        Method method = findMethod(cls, methodName, args.length);
+        String call = cls.getSimpleName() + "." + methodName + show(args);
+        try {
+            Object ret = method.invoke(target, args);
+            Trace.record(call + " = " + show(ret));
+            return ret;
+        } catch (InvocationTargetException e) {
+            Trace.record(call + " threw " + e.getCause());
+            return null;
+        }
+    }
+
+    private static Method findMethod(Class<?> cls, String name, int paramCount) throws NoSuchMethodException
+    {
+        for (Class<?> c = cls; c != null; c = c.getSuperclass()) {
+            for (Method m : c.getDeclaredMethods()) {
+                if (m.getName().equals(name) && m.getParameterCount() == paramCount && !m.isSynthetic()) {
+                    m.setAccessible(true);
+                    return m;
+                }
+            }
+        }
+        throw new NoSuchMethodException(cls.getName() + "." + name + " with " + paramCount + " argument(s)");
+    }
+
+    public Object get(Object target, String fieldName) throws Exception
+    {
+        Field field = target.getClass().getField(fieldName);
+        Object ret = field.get(target);
+        Trace.record(target.getClass().getSimpleName() + "." + fieldName + " == " + show(ret));
+        return ret;
+    }
+
+    public void set(Object target, String fieldName, Object value) throws Exception
+    {
+        target.getClass().getField(fieldName).set(target, value);
+        Trace.record(target.getClass().getSimpleName() + "." + fieldName + " := " + show(value));
+    }
+
+    public Object getStatic(String className, String fieldName) throws Exception
+    {
+        Class<?> cls = type(className);
+        Object ret = cls.getField(fieldName).get(null);
+        Trace.record(cls.getSimpleName() + "." + fieldName + " == " + show(ret));
+        return ret;
+    }
+
+    // Nothing that depends on identity, so the two engines' traces can be compared as text
+    static String show(Object value)
+    {
+        if (value instanceof Enum) {
+            Enum<?> e = (Enum<?>) value;
+            return e.getDeclaringClass().getSimpleName() + "." + e.name() + "#" + e.ordinal();
+        }
+        if (value instanceof Object[]) {
+            List<String> items = new ArrayList<>();
+            for (Object item : (Object[]) value) {
+                items.add(show(item));
+            }
+            return items.toString();
+        }
+        return String.valueOf(value);
+    }
+
+    private static String show(Object[] args)
+    {
+        List<String> items = new ArrayList<>();
+        for (Object arg : args) {
+            items.add(show(arg));
+        }
+        return "(" + String.join(", ", items) + ")";
+    }
+}
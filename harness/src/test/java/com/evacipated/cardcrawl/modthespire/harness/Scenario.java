@@ -0,0 +1,34 @@
+package com.evacipated.cardcrawl.modthespire.harness;
+
+import java.util.List;
+
+// A recorded sequence of calls into the patched game. Replayed once against each engine's output,
+// the traces they leave have to be the same
+public abstract class Scenario
+{
+    public final String name;
+
+    protected Scenario(String name)
+    {
+        this.name = name;
+    }
+
+    protected abstract void run(Replay replay) throws Exception;
+
+    public List<String> replay(ClassLoader loader)
+    {
+        Trace.take();
+        try {
+            run(new Replay(loader));
+        } catch (Exception e) {
+            Trace.record("scenario failed: " + e);
+        }
+        return Trace.take();
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
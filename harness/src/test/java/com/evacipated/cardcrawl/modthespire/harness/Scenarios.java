@@ -0,0 +1,113 @@
+package com.evacipated.cardcrawl.modthespire.harness;
+
+import com.evacipated.cardcrawl.modthespire.lib.SpireToggle;
+
+import java.util.Arrays;
+import java.util.List;
+
+// The invocation scenarios DifferentialHarnessTest replays, between them they reach every patch in the corpus
+public final class Scenarios
+{
+    private static final String MONSTER = "com.megacrit.cardcrawl.harness.Monster";
+    private static final String INTENT = "com.megacrit.cardcrawl.harness.Intent";
+    private static final String CORPUS = "com.evacipated.cardcrawl.modthespire.harness.corpus.";
+
+    private Scenarios()
+    {
+    }
+
+    public static List<Scenario> all()
+    {
+        return Arrays.asList(
+            new Scenario("damage") {
+                @Override
+                protected void run(Replay r) throws Exception
+                {
+                    Object m = r.create(MONSTER, "cultist", 20);
+                    r.call(m, "damage", 5);
+                    r.set(m, "block", 4);
+                    r.call(m, "damage", 3);
+                    r.call(m, "damage", 0);
+                    r.call(m, "describe");
+                }
+            },
+            new Scenario("lethal damage") {
+                @Override
+                protected void run(Replay r) throws Exception
+                {
+                    Object m = r.create(MONSTER, "louse", 6);
+                    r.call(m, "damage", 50);
+                    r.get(m, "hp");
+                    r.call(m, "describe");
+                }
+            },
+            new Scenario("turns") {
+                @Override
+                protected void run(Replay r) throws Exception
+                {
+                    Object m = r.create(MONSTER, "jaw worm", 40);
+                    for (Object intent : r.type(INTENT).getEnumConstants()) {
+                        r.set(m, "intent", intent);
+                        r.call(m, "takeTurn");
+                    }
+                    r.call(m, "describe");
+                }
+            },
+            new Scenario("heal") {
+                @Override
+                protected void run(Replay r) throws Exception
+                {
+                    Object m = r.create(MONSTER, "slime", 10);
+                    r.call(m, "heal", 3);
+                    r.call(m, "heal", 9);
+                    r.call(m, "heal", -1);
+                    r.call(m, "heal", 0);
+                    r.call(m, "describe");
+                }
+            },
+            new Scenario("spire enums") {
+                @Override
+                protected void run(Replay r) throws Exception
+                {
+                    r.callStatic(INTENT, "values");
+                    r.callStatic(INTENT, "valueOf", "SLEEPING");
+                    r.callStatic(INTENT, "valueOf", "NOT_AN_INTENT");
+                    Object stunned = r.getStatic(CORPUS + "EnumPatches", "STUNNED");
+                    r.getStatic(CORPUS + "EnumPatches", "asleep");
+                    Object m = r.create(MONSTER, "sentry", 30);
+                    r.set(m, "intent", stunned);
+                    r.call(m, "takeTurn");
+                    r.call(m, "describe");
+                }
+            },
+            new Scenario("overrides") {
+                @Override
+                protected void run(Replay r) throws Exception
+                {
+                    r.call(r.create("com.megacrit.cardcrawl.harness.Relic"), "use", 1);
+                    r.call(r.create(CORPUS + "OverridePatches$ModdedRelic"), "use", 2);
+                    r.call(r.create(CORPUS + "OverridePatches$OtherRelic"), "use", 5);
+                }
+            },
+            // Without invokedynamic linking toggling does nothing, so the patches
+            // are only replayed switched back on. This still relinks the call sites
+            new Scenario("toggle off and on") {
+                @Override
+                protected void run(Replay r) throws Exception
+                {
+                    Class<?> onDeath = r.type(CORPUS + "TogglePatches$OnDeath");
+                    Class<?> skipBuff = r.type(CORPUS + "TogglePatches$SkipBuff");
+                    Object m = r.create(MONSTER, "byrd", 4);
+                    SpireToggle.setEnabled(onDeath, false);
+                    SpireToggle.setEnabled(skipBuff, false);
+                    SpireToggle.setEnabled(onDeath, true);
+                    SpireToggle.setEnabled(skipBuff, true);
+                    r.set(m, "intent", r.callStatic(INTENT, "valueOf", "BUFF"));
+                    r.call(m, "takeTurn");
+                    r.call(m, "damage", 10);
+                    r.call(m, "describe");
+                }
+            }
+        );
+    }
+}
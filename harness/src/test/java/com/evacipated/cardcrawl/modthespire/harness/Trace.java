@@ -0,0 +1,27 @@
+package com.evacipated.cardcrawl.modthespire.harness;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Side effects of a scenario in the order they happened. The corpus and Replay write to it,
+// it's loaded outside the patched classes so both engines' runs share it
+public final class Trace
+{
+    private static final List<String> events = new ArrayList<>();
+
+    private Trace()
+    {
+    }
+
+    public static void record(String event)
+    {
+        events.add(event);
+    }
+
+    static List<String> take()
+    {
+        List<String> ret = new ArrayList<>(events);
+        events.clear();
+        return ret;
+    }
+}
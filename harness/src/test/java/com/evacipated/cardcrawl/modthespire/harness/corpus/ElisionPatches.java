@@ -0,0 +1,61 @@
+package com.evacipated.cardcrawl.modthespire.harness.corpus;
+
+import com.evacipated.cardcrawl.modthespire.harness.Trace;
+import com.evacipated.cardcrawl.modthespire.lib.ByRef;
+import com.evacipated.cardcrawl.modthespire.lib.SpirePatch;
+import com.evacipated.cardcrawl.modthespire.lib.SpireReturn;
+import com.megacrit.cardcrawl.harness.Monster;
+
+// Patches whose calls can leave out work (Rewrite.ELISION), next to ones that can't
+public class ElisionPatches
+{
+    @SpirePatch(clz = Monster.class, method = "damage")
+    public static class Empty
+    {
+        public static void Prefix(Monster __instance)
+        {
+        }
+    }
+
+    @SpirePatch(clz = Monster.class, method = "damage")
+    public static class OnlyContinue
+    {
+        public static SpireReturn<Integer> Prefix(Monster __instance, int amount)
+        {
+            Trace.record("only continue " + amount);
+            return SpireReturn.Continue();
+        }
+    }
+
+    @SpirePatch(clz = Monster.class, method = "damage")
+    public static class ReadsByRef
+    {
+        public static void Prefix(Monster __instance, @ByRef int[] amount)
+        {
+            Trace.record("reads " + amount[0]);
+        }
+    }
+
+    @SpirePatch(clz = Monster.class, method = "heal")
+    public static class WritesByRef
+    {
+        public static void Prefix(Monster __instance, @ByRef int[] amount)
+        {
+            if (amount[0] > 5) {
+                amount[0] = 5;
+            }
+        }
+    }
+
+    @SpirePatch(clz = Monster.class, method = "heal")
+    public static class EarlyReturn
+    {
+        public static SpireReturn<Integer> Prefix(Monster __instance, int amount)
+        {
+            if (amount < 0) {
+                return SpireReturn.Return(0);
+            }
+            return SpireReturn.Continue();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.evacipated.cardcrawl.modthespire.harness.corpus;
+
+import com.evacipated.cardcrawl.modthespire.lib.SpireEnum;
+import com.megacrit.cardcrawl.harness.Intent;
+
+// New Intent values, added in bytecode (PatchContext.setBytecodeEnums) or busted in at runtime
+public class EnumPatches
+{
+    @SpireEnum
+    public static Intent STUNNED;
+
+    @SpireEnum(name = "SLEEPING")
+    public static Intent asleep;
+}
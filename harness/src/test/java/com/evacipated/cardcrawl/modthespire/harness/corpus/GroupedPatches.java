@@ -0,0 +1,52 @@
+package com.evacipated.cardcrawl.modthespire.harness.corpus;
+
+import com.evacipated.cardcrawl.modthespire.harness.Trace;
+import com.evacipated.cardcrawl.modthespire.lib.SpirePatch;
+import com.megacrit.cardcrawl.harness.Monster;
+
+// Several Prefixes and Postfixes on one method, outlined into helpers (Rewrite.OUTLINING).
+// Second replaces the return value, so its Postfix stays inline and splits the group
+public class GroupedPatches
+{
+    @SpirePatch(clz = Monster.class, method = "describe")
+    public static class First
+    {
+        public static void Prefix(Monster __instance)
+        {
+            Trace.record("describe first: hp=" + __instance.hp);
+        }
+
+        public static void Postfix(Monster __instance)
+        {
+            Trace.record("describe first after");
+        }
+    }
+
+    @SpirePatch(clz = Monster.class, method = "describe")
+    public static class Second
+    {
+        public static void Prefix(Monster __instance)
+        {
+            Trace.record("describe second");
+        }
+
+        public static String Postfix(String __result, Monster __instance)
+        {
+            return __result + " +second";
+        }
+    }
+
+    @SpirePatch(clz = Monster.class, method = "describe")
+    public static class Third
+    {
+        public static void Prefix(Monster __instance)
+        {
+            Trace.record("describe third: block=" + __instance.block);
+        }
+
+        public static void Postfix(Monster __instance)
+        {
+            Trace.record("describe third after");
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.evacipated.cardcrawl.modthespire.harness.corpus;
+
+import com.evacipated.cardcrawl.modthespire.harness.Trace;
+import com.evacipated.cardcrawl.modthespire.lib.*;
+import com.megacrit.cardcrawl.harness.Monster;
+import javassist.CtBehavior;
+
+// An Insert at several lines with different locals in scope, compiled once for all of them (Rewrite.MULTI_INSERT)
+public class InsertPatches
+{
+    @SpirePatch(clz = Monster.class, method = "heal")
+    public static class EveryHpRead
+    {
+        @SpireInsertPatch(locator = Locator.class)
+        public static void Insert(Monster __instance, int amount)
+        {
+            Trace.record("hp read: hp=" + __instance.hp + " amount=" + amount);
+        }
+
+        private static class Locator extends SpireInsertLocator
+        {
+            @Override
+            public int[] Locate(CtBehavior ctMethodToPatch) throws Exception
+            {
+                return LineFinder.findAllInOrder(ctMethodToPatch, new Matcher.FieldAccessMatcher(Monster.class, "hp"));
+            }
+        }
+    }
+
+    @SpirePatch(clz = Monster.class, method = "takeTurn")
+    public static class EveryCase
+    {
+        @SpireInsertPatch(rlocs = {3, 6, 10})
+        public static void Insert(Monster __instance)
+        {
+            Trace.record("case: block=" + __instance.block);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.evacipated.cardcrawl.modthespire.harness.corpus;
+
+import com.evacipated.cardcrawl.modthespire.harness.Trace;
+import com.evacipated.cardcrawl.modthespire.lib.SpirePatch;
+import com.megacrit.cardcrawl.harness.Monster;
+import javassist.CannotCompileException;
+import javassist.expr.ExprEditor;
+import javassist.expr.FieldAccess;
+import javassist.expr.MethodCall;
+
+// Several Instrument patches on one method, batched into one pass (Rewrite.BATCHED_INSTRUMENTS)
+public class InstrumentPatches
+{
+    @SpirePatch(clz = Monster.class, method = "damage")
+    public static class TraceMin
+    {
+        public static ExprEditor Instrument()
+        {
+            return new ExprEditor() {
+                @Override
+                public void edit(MethodCall m) throws CannotCompileException
+                {
+                    if (m.getClassName().equals(Math.class.getName()) && m.getMethodName().equals("min")) {
+                        m.replace("{ $_ = $proceed($$); " + Trace.class.getName() + ".record(\"min \" + $_); }");
+                    }
+                }
+            };
+        }
+    }
+
+    @SpirePatch(clz = Monster.class, method = "damage")
+    public static class BracketHistory
+    {
+        public static ExprEditor Instrument()
+        {
+            return new ExprEditor() {
+                @Override
+                public void edit(MethodCall m) throws CannotCompileException
+                {
+                    if (m.getMethodName().equals("add")) {
+                        m.replace("{ $_ = $proceed(\"[\" + $1 + \"]\"); }");
+                    }
+                }
+            };
+        }
+    }
+
+    @SpirePatch(clz = Monster.class, method = "damage")
+    public static class TraceHpWrites
+    {
+        public static ExprEditor Instrument()
+        {
+            return new ExprEditor() {
+                @Override
+                public void edit(FieldAccess f) throws CannotCompileException
+                {
+                    if (f.isWriter() && f.getFieldName().equals("hp")) {
+                        f.replace("{ $proceed($$); " + Trace.class.getName() + ".record(\"hp = \" + $1); }");
+                    }
+                }
+            };
+        }
+    }
+
+    @SpirePatch(clz = Monster.class, method = "heal")
+    public static class TraceHealWrites
+    {
+        public static ExprEditor Instrument()
+        {
+            return new ExprEditor() {
+                @Override
+                public void edit(FieldAccess f) throws CannotCompileException
+                {
+                    if (f.isWriter() && f.getFieldName().equals("hp")) {
+                        f.replace("{ $proceed($$); " + Trace.class.getName() + ".record(\"healed to \" + $1); }");
+                    }
+                }
+            };
+        }
+    }
+
+    // Making the editor does more than construct it, so this method's Instruments are applied one at a time
+    @SpirePatch(clz = Monster.class, method = "heal")
+    public static class NumberHealHistory
+    {
+        private static int made;
+
+        public static ExprEditor Instrument()
+        {
+            int n = ++made;
+            return new ExprEditor() {
+                @Override
+                public void edit(MethodCall m) throws CannotCompileException
+                {
+                    if (m.getMethodName().equals("add")) {
+                        m.replace("{ $_ = $proceed($1 + \" #" + n + "\"); }");
+                    }
+                }
+            };
+        }
+    }
+}
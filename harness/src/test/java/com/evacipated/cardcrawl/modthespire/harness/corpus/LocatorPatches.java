@@ -0,0 +1,83 @@
+package com.evacipated.cardcrawl.modthespire.harness.corpus;
+
+import com.evacipated.cardcrawl.modthespire.harness.Trace;
+import com.evacipated.cardcrawl.modthespire.lib.*;
+import com.evacipated.cardcrawl.modthespire.patcher.Expectation;
+import com.megacrit.cardcrawl.harness.Monster;
+import javassist.CtBehavior;
+import javassist.expr.Expr;
+import javassist.expr.MethodCall;
+
+import java.util.Collections;
+import java.util.List;
+
+// Locators for the expression index (Rewrite.EXPR_INDEX): sequences it can answer,
+// and a matcher it can't that has to walk the method instead
+public class LocatorPatches
+{
+    @SpirePatch(clz = Monster.class, method = "damage")
+    public static class BeforeHistory
+    {
+        @SpireInsertPatch(locator = Locator.class, localvars = {"blocked"})
+        public static void Insert(Monster __instance, int amount, int blocked)
+        {
+            Trace.record("before history: amount=" + amount + " blocked=" + blocked);
+        }
+
+        private static class Locator extends SpireInsertLocator
+        {
+            @Override
+            public int[] Locate(CtBehavior ctMethodToPatch) throws Exception
+            {
+                return LineFinder.findInOrder(ctMethodToPatch,
+                    Collections.singletonList(new Matcher.FieldAccessMatcher(Monster.class, "block")),
+                    new Matcher.MethodCallMatcher(List.class, "add"));
+            }
+        }
+    }
+
+    @SpirePatch(clz = Monster.class, method = "damage")
+    public static class AfterDeath
+    {
+        @SpireInsertPatch(locator = Locator.class)
+        public static void Insert(Monster __instance)
+        {
+            Trace.record("dying: hp=" + __instance.hp);
+        }
+
+        private static class Locator extends SpireInsertLocator
+        {
+            @Override
+            public int[] Locate(CtBehavior ctMethodToPatch) throws Exception
+            {
+                return LineFinder.findInOrder(ctMethodToPatch, new Matcher.MethodCallMatcher(Monster.class, "die"));
+            }
+        }
+    }
+
+    @SpirePatch(clz = Monster.class, method = "takeTurn")
+    public static class OnEveryAdd
+    {
+        @SpireInsertPatch(locator = Locator.class)
+        public static void Insert(Monster __instance)
+        {
+            Trace.record("turn: " + __instance.intent);
+        }
+
+        private static class Locator extends SpireInsertLocator
+        {
+            @Override
+            public int[] Locate(CtBehavior ctMethodToPatch) throws Exception
+            {
+                Matcher anyAdd = new Matcher(Expectation.METHOD_CALL) {
+                    @Override
+                    public boolean match(Expr toMatch)
+                    {
+                        return toMatch instanceof MethodCall && ((MethodCall) toMatch).getMethodName().equals("add");
+                    }
+                };
+                return LineFinder.findAllInOrder(ctMethodToPatch, anyAdd);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.evacipated.cardcrawl.modthespire.harness.corpus;
+
+import com.evacipated.cardcrawl.modthespire.lib.SpireOverride;
+import com.evacipated.cardcrawl.modthespire.lib.SpireSuper;
+import com.megacrit.cardcrawl.harness.Relic;
+
+// Many overrides of one superclass's private methods, redirected in one pass over it (Rewrite.SUPERCLASS_OVERRIDES)
+public class OverridePatches
+{
+    public static class ModdedRelic extends Relic
+    {
+        @SpireOverride
+        protected String flash(int n)
+        {
+            return "modded(" + SpireSuper.call(n) + ")";
+        }
+
+        // SpireSuper.call can't hand back a primitive, so this one doesn't call through
+        @SpireOverride
+        protected int counter(int n)
+        {
+            return n + 100;
+        }
+
+        @SpireOverride
+        protected String label()
+        {
+            return "modded " + SpireSuper.call();
+        }
+
+        @SpireOverride
+        protected int tier()
+        {
+            return 3;
+        }
+    }
+
+    // Overrides a method ModdedRelic already redirected
+    public static class OtherRelic extends Relic
+    {
+        @SpireOverride
+        protected String flash(int n)
+        {
+            return "other " + n;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.evacipated.cardcrawl.modthespire.harness.corpus;
+
+import com.evacipated.cardcrawl.modthespire.harness.Trace;
+import com.evacipated.cardcrawl.modthespire.lib.SpirePatch;
+import com.evacipated.cardcrawl.modthespire.lib.SpireReturn;
+import com.megacrit.cardcrawl.harness.Intent;
+import com.megacrit.cardcrawl.harness.Monster;
+
+// Toggleable patches, called through invokedynamic (Rewrite.TOGGLE_LINKING)
+public class TogglePatches
+{
+    @SpirePatch(clz = Monster.class, method = "die", toggleable = true)
+    public static class OnDeath
+    {
+        public static void Prefix(Monster __instance)
+        {
+            Trace.record("toggle: " + __instance.name + " died");
+        }
+    }
+
+    @SpirePatch(clz = Monster.class, method = "takeTurn", toggleable = true)
+    public static class SkipBuff
+    {
+        public static SpireReturn<Integer> Prefix(Monster __instance)
+        {
+            if (__instance.intent == Intent.BUFF) {
+                return SpireReturn.Return(99);
+            }
+            return SpireReturn.Continue();
+        }
+    }
+}
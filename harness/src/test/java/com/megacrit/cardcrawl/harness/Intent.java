@@ -0,0 +1,8 @@
+package com.megacrit.cardcrawl.harness;
+
+public enum Intent
+{
+    ATTACK,
+    DEFEND,
+    BUFF
+}
@@ -0,0 +1,71 @@
+package com.megacrit.cardcrawl.harness;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Synthetic game class the harness corpus patches. It sits in the game's package
+// so the switch over Intent is indexed the same way as the game's own switch maps
+public class Monster
+{
+    public String name;
+    public int hp;
+    public int block = 0;
+    public Intent intent = Intent.ATTACK;
+    private final List<String> history = new ArrayList<>();
+
+    public Monster(String name, int hp)
+    {
+        this.name = name;
+        this.hp = hp;
+    }
+
+    public int damage(int amount)
+    {
+        int blocked = Math.min(block, amount);
+        block -= blocked;
+        amount -= blocked;
+        history.add("damage " + amount);
+        hp -= amount;
+        if (hp <= 0) {
+            hp = 0;
+            die();
+        }
+        return amount;
+    }
+
+    public void die()
+    {
+        history.add("die");
+    }
+
+    public int takeTurn()
+    {
+        switch (intent) {
+            case ATTACK:
+                history.add("attack");
+                return 6;
+            case DEFEND:
+                block += 5;
+                history.add("defend");
+                return 0;
+            default:
+                history.add("other " + intent.name());
+                return -1;
+        }
+    }
+
+    public int heal(int amount)
+    {
+        int before = hp;
+        for (int i = 0; i < amount; ++i) {
+            hp += 1;
+            history.add("heal");
+        }
+        return hp - before;
+    }
+
+    public String describe()
+    {
+        return name + " hp=" + hp + " block=" + block + " intent=" + intent + " " + history;
+    }
+}
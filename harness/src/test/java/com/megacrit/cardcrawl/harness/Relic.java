@@ -0,0 +1,30 @@
+package com.megacrit.cardcrawl.harness;
+
+// Private methods for @SpireOverride to override
+public class Relic
+{
+    public String use(int n)
+    {
+        return flash(n) + "/" + counter(n) + "/" + label() + "/" + tier();
+    }
+
+    private String flash(int n)
+    {
+        return "flash" + n;
+    }
+
+    private int counter(int n)
+    {
+        return n * 2;
+    }
+
+    private String label()
+    {
+        return "relic";
+    }
+
+    private int tier()
+    {
+        return 1;
+    }
+}
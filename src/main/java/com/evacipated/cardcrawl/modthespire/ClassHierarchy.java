@@ -0,0 +1,270 @@
+package com.evacipated.cardcrawl.modthespire;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+// Superclass and depth of every class in the game and mod jars.
+// Read from the class file headers only, so nothing is loaded or turned into a CtClass.
+// The headers of each jar on disk are cached between launches, keyed by the jar's path, size and modified time.
+// When the same class is in more than one jar, the first one wins, like the ClassLoader
+public class ClassHierarchy
+{
+    private static final String OBJECT = "java.lang.Object";
+    private static final String JAR_PREFIX = "jar ";
+    private static final Path CACHE_FILE = Paths.get(System.getProperty("java.io.tmpdir"), "ModTheSpire", "hierarchy.txt");
+
+    private final Map<String, Node> nodes = new HashMap<>();
+
+    private static class Node
+    {
+        final String superName;
+        int depth = -2;
+
+        Node(String superName)
+        {
+            this.superName = superName;
+        }
+    }
+
+    // jars in the order the ClassLoader searches them, then the in-memory ones (corepatches).
+    // What each jar on disk holds is cached keyed by its path, size and modified time, so an unchanged
+    // jar is neither inflated nor read through to hash it again
+    public static ClassHierarchy build(URL[] jars, InMemoryJar... inMemory) throws IOException
+    {
+        Map<String, List<String>> cached = readCache();
+        Map<String, List<String>> used = new LinkedHashMap<>();
+        boolean changed = false;
+
+        ClassHierarchy hierarchy = new ClassHierarchy();
+        for (URL jar : jars) {
+            if (jar == null) {
+                continue;
+            }
+            File file = toFile(jar);
+            if (file == null) {
+                try (InputStream is = jar.openStream()) {
+                    hierarchy.addAll(scan(is));
+                }
+                continue;
+            }
+            String key = cacheKey(file);
+            List<String> lines = cached.get(key);
+            if (lines == null) {
+                try (InputStream is = new FileInputStream(file)) {
+                    lines = scan(is);
+                }
+                changed = true;
+            }
+            used.put(key, lines);
+            hierarchy.addAll(lines);
+        }
+        for (InMemoryJar jar : inMemory) {
+            for (String name : jar.names()) {
+                if (name.endsWith(".class")) {
+                    hierarchy.add(line(new ClassReader(jar.get(name))));
+                }
+            }
+        }
+
+        // Only the jars used this time are kept, so the cache doesn't grow with every mod update
+        if (changed || !used.keySet().equals(cached.keySet())) {
+            try {
+                writeCache(used);
+            } catch (IOException e) {
+                System.out.println("Failed to write class hierarchy cache: " + e);
+            }
+        }
+        return hierarchy;
+    }
+
+    private static File toFile(URL url)
+    {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            File file = new File(url.toURI());
+            return file.isFile() ? file : null;
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Size and modified time first, the path can have spaces in it
+    private static String cacheKey(File file)
+    {
+        return file.length() + " " + file.lastModified() + " " + file.getAbsolutePath();
+    }
+
+    private static List<String> scan(InputStream in) throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        try (JarInputStream is = new JarInputStream(in)) {
+            JarEntry entry;
+            while ((entry = is.getNextJarEntry()) != null) {
+                if (entry.getName().endsWith(".class")) {
+                    lines.add(line(new ClassReader(readEntry(is))));
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static byte[] readEntry(InputStream is) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = is.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    // "name superclass", the superclass being - for java.lang.Object
+    private static String line(ClassReader reader)
+    {
+        String superName = reader.getSuperName();
+        return toDotted(reader.getClassName()) + ' ' + (superName == null ? "-" : toDotted(superName));
+    }
+
+    // A "jar <size> <modified> <path>" line, followed by a line for each class in that jar
+    private static Map<String, List<String>> readCache()
+    {
+        Map<String, List<String>> ret = new HashMap<>();
+        if (!Files.isRegularFile(CACHE_FILE)) {
+            return ret;
+        }
+        try {
+            List<String> current = null;
+            for (String line : Files.readAllLines(CACHE_FILE, StandardCharsets.UTF_8)) {
+                if (line.startsWith(JAR_PREFIX)) {
+                    current = new ArrayList<>();
+                    ret.put(line.substring(JAR_PREFIX.length()), current);
+                } else if (!line.isEmpty()) {
+                    if (current == null || line.indexOf(' ') < 0) {
+                        throw new IOException("Malformed line: " + line);
+                    }
+                    current.add(line);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to read class hierarchy cache, rebuilding: " + e);
+            ret.clear();
+        }
+        return ret;
+    }
+
+    private static void writeCache(Map<String, List<String>> jars) throws IOException
+    {
+        Files.createDirectories(CACHE_FILE.getParent());
+        Path tmp = Files.createTempFile(CACHE_FILE.getParent(), "hierarchy", ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, List<String>> entry : jars.entrySet()) {
+                out.write(JAR_PREFIX);
+                out.write(entry.getKey());
+                out.newLine();
+                for (String line : entry.getValue()) {
+                    out.write(line);
+                    out.newLine();
+                }
+            }
+        }
+        Files.move(tmp, CACHE_FILE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void addAll(List<String> lines)
+    {
+        for (String line : lines) {
+            add(line);
+        }
+    }
+
+    private void add(String line)
+    {
+        String[] parts = line.split(" ");
+        if (nodes.containsKey(parts[0])) {
+            return;
+        }
+        String superName = "-".equals(parts[1]) ? null : parts[1];
+        nodes.put(parts[0], new Node(superName));
+    }
+
+    private static String toDotted(String internalName)
+    {
+        return internalName.replace('/', '.');
+    }
+
+    public boolean contains(String className)
+    {
+        return nodes.containsKey(className);
+    }
+
+    // null for java.lang.Object and classes not in the index
+    public String getSuperclass(String className)
+    {
+        Node node = nodes.get(className);
+        return node == null ? null : node.superName;
+    }
+
+    // Number of superclasses above className, java.lang.Object being 0.
+    // -1 if the chain leaves the index before reaching java.lang.Object
+    public int getDepth(String className)
+    {
+        if (OBJECT.equals(className)) {
+            return 0;
+        }
+        Node node = nodes.get(className);
+        if (node == null) {
+            return -1;
+        }
+        if (node.depth == -2) {
+            // Guards against malformed cycles
+            node.depth = -1;
+            int superDepth = getDepth(node.superName);
+            node.depth = superDepth < 0 ? -1 : superDepth + 1;
+        }
+        return node.depth;
+    }
+
+    // Whether superName is className or one of its superclasses.
+    // null if that can't be decided without leaving the index
+    public Boolean isSubclass(String className, String superName)
+    {
+        String name = className;
+        while (name != null) {
+            if (name.equals(superName)) {
+                return true;
+            }
+            if (OBJECT.equals(name)) {
+                return false;
+            }
+            Node node = nodes.get(name);
+            if (node == null) {
+                return null;
+            }
+            name = node.superName;
+        }
+        return false;
+    }
+}
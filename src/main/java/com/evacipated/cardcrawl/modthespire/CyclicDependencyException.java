@@ -1,6 +1,23 @@
 package com.evacipated.cardcrawl.modthespire;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 public class CyclicDependencyException extends Exception
 {
+    // First and last are the same
+    public List<?> cycle;
+
+    public CyclicDependencyException(List<?> cycle)
+    {
+        this.cycle = cycle;
+    }
 
+    @Override
+    public String getMessage()
+    {
+        return "Cyclic dependency: " + cycle.stream()
+            .map(o -> o instanceof ModInfo ? ((ModInfo) o).getIDName() : String.valueOf(o))
+            .collect(Collectors.joining(" -> ")) + ".";
+    }
 }
@@ -0,0 +1,111 @@
+package com.evacipated.cardcrawl.modthespire;
+
+import com.evacipated.cardcrawl.modthespire.patcher.PatchTimingReport;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+// @SpireInitializer(phase = DEFERRED) initializers, in mod load order.
+// The core patches run one per splash screen frame and the rest before the main menu is made,
+// so the window shows up without waiting for them
+public class DeferredInitializers
+{
+    private static final Queue<Deferred> queue = new ArrayDeque<>();
+    private static boolean started = false;
+    private static long totalNanos = 0;
+    // The patching run's timings, written out again once the deferred ones are in
+    private static PatchTimingReport timings = null;
+
+    private static class Deferred
+    {
+        final String modID;
+        final String initializer;
+        final Method init;
+
+        Deferred(String modID, String initializer, Method init)
+        {
+            this.modID = modID;
+            this.initializer = initializer;
+            this.init = init;
+        }
+    }
+
+    static synchronized void add(String modID, String initializer, Method init, PatchTimingReport timings)
+    {
+        queue.add(new Deferred(modID, initializer, init));
+        DeferredInitializers.timings = timings;
+    }
+
+    public static synchronized void runNext()
+    {
+        start();
+        Deferred next = queue.poll();
+        if (next != null) {
+            run(next);
+            if (queue.isEmpty()) {
+                finish();
+            }
+        }
+    }
+
+    public static synchronized void runAll()
+    {
+        start();
+        if (queue.isEmpty()) {
+            return;
+        }
+        while (!queue.isEmpty()) {
+            run(queue.poll());
+        }
+        finish();
+    }
+
+    private static void start()
+    {
+        if (started) {
+            return;
+        }
+        started = true;
+        if (queue.isEmpty() && !Loader.DEBUG) {
+            return;
+        }
+        long sinceLaunch = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.println("Game window up " + sinceLaunch + "ms after launch, " + queue.size() + " deferred initializer(s) to run");
+    }
+
+    private static void finish()
+    {
+        System.out.println("Deferred initializers done, " + (totalNanos / 1000000) + "ms kept off startup");
+        if (timings != null) {
+            try {
+                timings.write(Paths.get(PatchTimingReport.REPORT_FILE));
+            } catch (IOException e) {
+                System.out.println("Failed to write " + PatchTimingReport.REPORT_FILE + ": " + e);
+            }
+        }
+    }
+
+    private static void run(Deferred deferred)
+    {
+        System.out.println("Deferred initializer " + deferred.initializer);
+        long startTime = System.nanoTime();
+        try {
+            deferred.init.invoke(null);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(deferred.initializer, e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(deferred.initializer, e);
+        }
+        long duration = System.nanoTime() - startTime;
+        totalNanos += duration;
+        if (timings != null) {
+            timings.record("deferred", deferred.modID, deferred.initializer, startTime);
+        }
+        System.out.println(" - " + (duration / 1000000) + "ms");
+    }
+}
@@ -1,10 +1,10 @@
 package com.evacipated.cardcrawl.modthespire;
 
-import org.clapper.util.classutil.*;
 import sun.reflect.ConstructorAccessor;
 import sun.reflect.ReflectionFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.util.*;
@@ -17,6 +17,8 @@ public class EnumBusterReflect {
 
     private static final String VALUES_FIELD = "$VALUES";
     private static final String ORDINAL_FIELD = "ordinal";
+    private static final String ENUM_CONSTANTS_FIELD = "enumConstants";
+    private static final String ENUM_CONSTANT_DIRECTORY_FIELD = "enumConstantDirectory";
 
     private final ReflectionFactory reflection =
         ReflectionFactory.getReflectionFactory();
@@ -26,6 +28,7 @@ public class EnumBusterReflect {
 
     private final Collection<Field> switchFields;
 
+    private final boolean trackUndo;
     private final Deque<Memento> undoStack =
         new LinkedList<Memento>();
 
@@ -33,12 +36,38 @@ public class EnumBusterReflect {
      * Construct an EnumBuster for the given enum class and keep
      * the switch statements of the classes specified in
      * switchUsers in sync with the enum values.
+     * Changes can't be undone.
      */
     public EnumBusterReflect(ClassLoader loader, Class<?> clazz) throws NoSuchFieldException, ClassNotFoundException
+    {
+        this(loader, clazz, false);
+    }
+
+    /**
+     * As above, but if trackUndo is set every change snapshots
+     * the values and switch maps so that it can be undone.
+     */
+    public EnumBusterReflect(ClassLoader loader, Class<?> clazz, boolean trackUndo) throws NoSuchFieldException, ClassNotFoundException
+    {
+        this(loader, clazz, trackUndo, loadSwitchMapIndex());
+    }
+
+    // The patcher passes in its session's index, so the game jar's switch maps are only read once per run
+    EnumBusterReflect(ClassLoader loader, Class<?> clazz, boolean trackUndo, SwitchMapIndex switchMaps) throws NoSuchFieldException, ClassNotFoundException
     {
         this.loader = loader;
         this.clazz = clazz;
-        switchFields = findRelatedSwitchFields();
+        this.trackUndo = trackUndo;
+        switchFields = findRelatedSwitchFields(switchMaps);
+    }
+
+    private static SwitchMapIndex loadSwitchMapIndex()
+    {
+        try {
+            return SwitchMapIndex.load(new File(Loader.STS_JAR));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not index switch statements", e);
+        }
     }
 
     /**
@@ -66,7 +95,7 @@ public class EnumBusterReflect {
     public Enum<?> make(String value, int ordinal,
                   Class[] additionalTypes, Object[] additional) {
         try {
-            undoStack.push(new Memento());
+            pushMemento();
             ConstructorAccessor ca = findConstructorAccessor(
                 additionalTypes, clazz);
             return constructEnum(clazz, ca, value,
@@ -99,7 +128,7 @@ public class EnumBusterReflect {
      */
     public void addByValue(Enum<?> e) {
         try {
-            undoStack.push(new Memento());
+            pushMemento();
             Field valuesField = findValuesField();
 
             // we get the current Enum[]
@@ -110,6 +139,7 @@ public class EnumBusterReflect {
                     setOrdinal(e, value.ordinal());
                     values[i] = e;
                     replaceConstant(e);
+                    resetEnumCaches();
                     return;
                 }
             }
@@ -124,13 +154,66 @@ public class EnumBusterReflect {
 
             int ordinal = newValues.length - 1;
             setOrdinal(e, ordinal);
-            addSwitchCase();
+            addSwitchCases(1);
+            resetEnumCaches();
         } catch (Exception ex) {
             throw new IllegalArgumentException(
                 "Could not set the enum", ex);
         }
     }
 
+    /**
+     * Same as calling addByValue for each enum in order, but
+     * the values array and every switch map are only copied
+     * once, no matter how many enums are added.
+     *
+     * @param es the enums to add
+     */
+    public void addAllByValue(Collection<? extends Enum<?>> es) {
+        if (es.isEmpty()) {
+            return;
+        }
+        try {
+            pushMemento();
+            Enum<?>[] values = values();
+
+            List<Enum<?>> newValues = new ArrayList<Enum<?>>(values.length + es.size());
+            Map<String, Integer> ordinals = new HashMap<String, Integer>();
+            for (Enum<?> value : values) {
+                ordinals.put(value.name(), newValues.size());
+                newValues.add(value);
+            }
+
+            for (Enum<?> e : es) {
+                Integer ordinal = ordinals.get(e.name());
+                if (ordinal != null) {
+                    // overwrite the existing value, like addByValue
+                    setOrdinal(e, ordinal);
+                    newValues.set(ordinal, e);
+                    replaceConstant(e);
+                } else {
+                    ordinal = newValues.size();
+                    setOrdinal(e, ordinal);
+                    ordinals.put(e.name(), ordinal);
+                    newValues.add(e);
+                }
+            }
+
+            Enum<?>[] valuesArray = Arrays.copyOf(values, newValues.size());
+            for (int i = 0; i < valuesArray.length; i++) {
+                valuesArray[i] = newValues.get(i);
+            }
+            ReflectionHelper.setStaticFinalField(
+                findValuesField(), valuesArray);
+
+            addSwitchCases(valuesArray.length - values.length);
+            resetEnumCaches();
+        } catch (Exception ex) {
+            throw new IllegalArgumentException(
+                "Could not set the enums", ex);
+        }
+    }
+
     /**
      * We delete the enum from the values array and set the
      * constant pointer to null.
@@ -142,7 +225,7 @@ public class EnumBusterReflect {
     public boolean deleteByValue(Enum<?> e) {
         if (e == null) throw new NullPointerException();
         try {
-            undoStack.push(new Memento());
+            pushMemento();
             // we get the current E[]
             Enum<?>[] values = values();
             for (int i = 0; i < values.length; i++) {
@@ -160,6 +243,7 @@ public class EnumBusterReflect {
                         valuesField, newValues);
                     removeSwitchCase(i);
                     blankOutConstant(e);
+                    resetEnumCaches();
                     return true;
                 }
             }
@@ -182,6 +266,7 @@ public class EnumBusterReflect {
 
     /**
      * Undo the previous operation.
+     * Always false unless the buster was made with trackUndo.
      */
     public boolean undo() {
         try {
@@ -224,16 +309,39 @@ public class EnumBusterReflect {
         return (Enum<?>)clazz.cast(ca.newInstance(parms));
     }
 
+    private void pushMemento() throws IllegalAccessException {
+        if (trackUndo) {
+            undoStack.push(new Memento());
+        }
+    }
+
+    /**
+     * Class caches the enum values for valueOf and
+     * getEnumConstants, drop them so they're rebuilt
+     * from the new values array.
+     */
+    private void resetEnumCaches()
+        throws NoSuchFieldException, IllegalAccessException {
+        for (String name : new String[]{ENUM_CONSTANTS_FIELD, ENUM_CONSTANT_DIRECTORY_FIELD}) {
+            Field field = Class.class.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(clazz, null);
+        }
+    }
+
     /**
      * The only time we ever add a new enum is at the end.
      * Thus all we need to do is expand the switch map arrays
-     * by one empty slot.
+     * by as many empty slots as enums were added.
      */
-    private void addSwitchCase() {
+    private void addSwitchCases(int count) {
+        if (count <= 0) {
+            return;
+        }
         try {
             for (Field switchField : switchFields) {
                 int[] switches = (int[]) switchField.get(null);
-                switches = Arrays.copyOf(switches, switches.length + 1);
+                switches = Arrays.copyOf(switches, switches.length + count);
                 ReflectionHelper.setStaticFinalField(
                     switchField, switches
                 );
@@ -295,40 +403,24 @@ public class EnumBusterReflect {
         return valuesField;
     }
 
-    private Collection<Field> findRelatedSwitchFields() throws ClassNotFoundException, NoSuchFieldException
+    private Collection<Field> findRelatedSwitchFields(SwitchMapIndex switchMaps) throws ClassNotFoundException, NoSuchFieldException
     {
         Collection<Field> result = new ArrayList<Field>();
 
-        ClassFinder finder = new ClassFinder();
-        finder.add(new File(Loader.STS_JAR));
-
-        ClassFilter filter =
-            new AndClassFilter(
-                new NotClassFilter(new InterfaceOnlyClassFilter()),
-                new NotClassFilter(new AbstractClassFilter()),
-                new RegexClassFilter("com\\.megacrit\\.cardcrawl\\..+\\$1")
-            );
-        Collection<ClassInfo> foundClasses = new ArrayList<>();
-        finder.findClasses(foundClasses, filter);
+        List<String> switchClasses = switchMaps.getClassesWithSwitchMap(clazz);
 
         if (Loader.DEBUG) {
             System.out.println();
             System.out.println(clazz.getName());
         }
-        int count = 0;
-        for (ClassInfo classInfo : foundClasses) {
-            for (FieldInfo field : classInfo.getFields()) {
-                String switchMapName = "$SwitchMap$" + clazz.getName().replace('.', '$');
-                if (field.getName().equals(switchMapName)) {
-                    count++;
-                    if (Loader.DEBUG) System.out.println("  " + classInfo.getClassName());
-                    Field realField = loader.loadClass(classInfo.getClassName()).getDeclaredField(field.getName());
-                    realField.setAccessible(true);
-                    result.add(realField);
-                }
-            }
+        String switchMapName = SwitchMapIndex.switchMapName(clazz);
+        for (String className : switchClasses) {
+            if (Loader.DEBUG) System.out.println("  " + className);
+            Field realField = loader.loadClass(className).getDeclaredField(switchMapName);
+            realField.setAccessible(true);
+            result.add(realField);
         }
-        if (Loader.DEBUG) System.out.println(count + " switch statement(s)");
+        if (Loader.DEBUG) System.out.println(switchClasses.size() + " switch statement(s)");
 
         return  result;
     }
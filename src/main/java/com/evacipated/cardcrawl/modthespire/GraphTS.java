@@ -1,6 +1,7 @@
 package com.evacipated.cardcrawl.modthespire;
 
 import java.util.*;
+import java.util.function.IntPredicate;
 
 // Heavily modified from
 // http://www.java2s.com/Code/Java/Collections-Data-Structure/Topologicalsorting.htm
@@ -18,33 +19,48 @@ public class GraphTS<T>
     }
 
     private List<Vertex> vertexList;
-    private List<List<Boolean>> matrix;
+    // Edge start -> end: start has to come before end
+    private List<Set<Integer>> successors;
+    private List<Set<Integer>> predecessors;
+    // The same edges minus the optional ones
+    private List<Set<Integer>> requiredSuccessors;
+    private List<Set<Integer>> requiredPredecessors;
 
     public List<T> sortedArray;
 
     public GraphTS()
     {
         vertexList = new ArrayList<>();
-        matrix = new ArrayList<>();
+        successors = new ArrayList<>();
+        predecessors = new ArrayList<>();
+        requiredSuccessors = new ArrayList<>();
+        requiredPredecessors = new ArrayList<>();
         sortedArray = new ArrayList<>();
     }
 
     public void addVertex(T v)
     {
         vertexList.add(new Vertex(v));
-        List<Boolean> tmp = new ArrayList<>();
-        matrix.add(tmp);
-
-        for (List<Boolean> row : matrix) {
-            for (int i=row.size(); i<vertexList.size(); ++i) {
-                row.add(false);
-            }
-        }
+        successors.add(new LinkedHashSet<>());
+        predecessors.add(new LinkedHashSet<>());
+        requiredSuccessors.add(new LinkedHashSet<>());
+        requiredPredecessors.add(new LinkedHashSet<>());
     }
 
     public void addEdge(int start, int end)
     {
-        matrix.get(start).set(end, true);
+        addEdge(start, end, false);
+    }
+
+    // Optional edges give way when they end up on a cycle, see tsortStable
+    public void addEdge(int start, int end, boolean optional)
+    {
+        successors.get(start).add(end);
+        predecessors.get(end).add(start);
+        if (!optional) {
+            requiredSuccessors.get(start).add(end);
+            requiredPredecessors.get(end).add(start);
+        }
     }
 
     public void displayVertex(int idx) {
@@ -54,146 +70,379 @@ public class GraphTS<T>
     public void tsort() throws CyclicDependencyException
     {
         sortedArray.clear();
-        while (vertexList.size() > 0) { // while vertices remain,
-            // get a vertex with no successors, or -1
-            int currentVertex = noSuccessors();
-            if (currentVertex == -1) { // must be a cycle
-                throw new CyclicDependencyException();
+        int n = vertexList.size();
+        // Repeatedly takes the first vertex with no successors left, then reverses
+        int[] remaining = new int[n];
+        PriorityQueue<Integer> ready = new PriorityQueue<>();
+        for (int i=0; i<n; ++i) {
+            remaining[i] = successors.get(i).size();
+            if (remaining[i] == 0) {
+                ready.add(i);
             }
-            // insert vertex label in sorted array
-            sortedArray.add(vertexList.get(currentVertex).value);
-
-            deleteVertex(currentVertex); // delete vertex
+        }
+        while (!ready.isEmpty()) {
+            int v = ready.poll();
+            sortedArray.add(vertexList.get(v).value);
+            for (int p : predecessors.get(v)) {
+                if (--remaining[p] == 0) {
+                    ready.add(p);
+                }
+            }
+        }
+        if (sortedArray.size() < n) {
+            throw new CyclicDependencyException(findCycle(successors, predecessors));
         }
 
         Collections.reverse(sortedArray);
     }
 
-    public void tsortStable()
+    // Keeps vertices in the order they were added unless an edge says otherwise.
+    // Each vertex goes in just before the first vertex already placed that has to come after it,
+    // then anything placed after it that has to come before it is pulled in front of it.
+    // A cycle of required edges is an error. A cycle that needs an optional edge to close only
+    // gets a warning, the optional edges inside it are dropped and its vertices keep their list order
+    public void tsortStable() throws CyclicDependencyException
     {
+        List<Set<Integer>> successors = this.successors;
+        List<Set<Integer>> predecessors = this.predecessors;
+        if (!isAcyclic(successors, predecessors)) {
+            if (!isAcyclic(requiredSuccessors, requiredPredecessors)) {
+                throw new CyclicDependencyException(findCycle(requiredSuccessors, requiredPredecessors));
+            }
+            successors = new ArrayList<>(successors);
+            predecessors = new ArrayList<>(predecessors);
+            dropOptionalCycles(successors, predecessors);
+        }
+
+        int n = vertexList.size();
+        Order order = new Order(n);
+        for (int v=0; v<n; ++v) {
+            int before = -1;
+            for (int s : successors.get(v)) {
+                if (s != v && order.contains(s) && (before == -1 || order.isBefore(s, before))) {
+                    before = s;
+                }
+            }
+            order.insertBefore(v, before);
+            pull(order, predecessors, v);
+        }
+
         sortedArray.clear();
-        for (Vertex v : vertexList) {
-            sortedArray.add(v.value);
+        for (int v = order.first(); v != -1; v = order.next(v)) {
+            sortedArray.add(vertexList.get(v).value);
         }
+    }
 
-        int n = sortedArray.size();
+    private void pull(Order order, List<Set<Integer>> predecessors, int v)
+    {
+        List<Integer> after = new ArrayList<>();
+        for (int p : predecessors.get(v)) {
+            if (p != v && order.contains(p) && order.isBefore(v, p)) {
+                after.add(p);
+            }
+        }
+        after.sort(order::compare);
+        // Nothing is ever moved behind v, so these stay in the same order as they're pulled
+        for (int p : after) {
+            if (order.isBefore(v, p)) {
+                order.remove(p);
+                order.insertBefore(p, v);
+                pull(order, predecessors, p);
+            }
+        }
+    }
 
-        Dependencies depends = new Dependencies();
+    // Warns about each strongly connected component and removes the optional edges inside it
+    // from the given copies. The required edges left are acyclic, so this leaves no cycles
+    private void dropOptionalCycles(List<Set<Integer>> successors, List<Set<Integer>> predecessors)
+    {
+        int[] component = components();
+        Set<Integer> warned = new HashSet<>();
+        for (int v=0; v<successors.size(); ++v) {
+            Set<Integer> kept = null;
+            for (int s : successors.get(v)) {
+                if (s == v || component[s] != component[v] || requiredSuccessors.get(v).contains(s)) {
+                    continue;
+                }
+                if (warned.add(component[v])) {
+                    int c = component[v];
+                    List<T> cycle = walkCycle(v, predecessors, p -> component[p] == c);
+                    System.out.println("WARNING: " + new CyclicDependencyException(cycle).getMessage()
+                        + " Ignoring the optional dependencies in it, keeping list order.");
+                }
+                if (kept == null) {
+                    kept = new LinkedHashSet<>(successors.get(v));
+                    successors.set(v, kept);
+                }
+                kept.remove(s);
+                Set<Integer> preds = new LinkedHashSet<>(predecessors.get(s));
+                preds.remove(v);
+                predecessors.set(s, preds);
+            }
+        }
+    }
 
-        boolean restart = false;
-        do {
-            restart = false;
-            for (int i=0; i<n; ++i) {
-                for (int j=0; j<i; ++j) {
-                    if (depends.doesXHaveDirectDependencyOnY(sortedArray.get(j), sortedArray.get(i))) {
-                        boolean iOnJ = depends.doesXHaveTransientDependencyOnY(sortedArray.get(j), sortedArray.get(i));
-                        boolean jOnI = depends.doesXHaveTransientDependencyOnY(sortedArray.get(i), sortedArray.get(j));
-
-                        if (!(jOnI && iOnJ)) { // not circular depend
-                            T t = sortedArray.get(i);
-                            List<Boolean> children = matrix.get(i);
-                            sortedArray.remove(i);
-                            matrix.remove(i);
-                            sortedArray.add(j, t);
-                            matrix.add(j, children);
-                            restart = true;
-                            break;
-                        }
+    // Strongly connected components (Kosaraju), by component number per vertex
+    private int[] components()
+    {
+        int n = vertexList.size();
+        boolean[] visited = new boolean[n];
+        Deque<Integer> finished = new ArrayDeque<>();
+        for (int root=0; root<n; ++root) {
+            if (visited[root]) {
+                continue;
+            }
+            visited[root] = true;
+            Deque<Iterator<Integer>> stack = new ArrayDeque<>();
+            Deque<Integer> path = new ArrayDeque<>();
+            stack.push(successors.get(root).iterator());
+            path.push(root);
+            while (!stack.isEmpty()) {
+                Iterator<Integer> it = stack.peek();
+                if (it.hasNext()) {
+                    int s = it.next();
+                    if (!visited[s]) {
+                        visited[s] = true;
+                        stack.push(successors.get(s).iterator());
+                        path.push(s);
+                    }
+                } else {
+                    stack.pop();
+                    finished.push(path.pop());
+                }
+            }
+        }
+
+        int[] component = new int[n];
+        Arrays.fill(component, -1);
+        int count = 0;
+        for (int root : finished) {
+            if (component[root] != -1) {
+                continue;
+            }
+            Deque<Integer> stack = new ArrayDeque<>();
+            stack.push(root);
+            component[root] = count;
+            while (!stack.isEmpty()) {
+                for (int p : predecessors.get(stack.pop())) {
+                    if (component[p] == -1) {
+                        component[p] = count;
+                        stack.push(p);
                     }
                 }
-                if (restart) break;
             }
-        } while (restart);
+            ++count;
+        }
+        return component;
+    }
+
+    private boolean isAcyclic(List<Set<Integer>> successors, List<Set<Integer>> predecessors)
+    {
+        for (boolean b : acyclicVertices(successors, predecessors)) {
+            if (!b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Kahn's algorithm, ignoring self-edges. Whatever it can't take is on a cycle or after one
+    private boolean[] acyclicVertices(List<Set<Integer>> successors, List<Set<Integer>> predecessors)
+    {
+        int n = vertexList.size();
+        boolean[] acyclic = new boolean[n];
+        int[] remaining = new int[n];
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i=0; i<n; ++i) {
+            for (int p : predecessors.get(i)) {
+                if (p != i) {
+                    ++remaining[i];
+                }
+            }
+            if (remaining[i] == 0) {
+                ready.add(i);
+            }
+        }
+        while (!ready.isEmpty()) {
+            int v = ready.poll();
+            acyclic[v] = true;
+            for (int s : successors.get(v)) {
+                if (s != v && --remaining[s] == 0) {
+                    ready.add(s);
+                }
+            }
+        }
+        return acyclic;
     }
 
-    private int noSuccessors() // returns vert with no successors (or -1 if no such verts)
+    // Every vertex Kahn's algorithm leaves over has a predecessor that's also left over,
+    // so walking predecessors from one of them has to come back around
+    private List<T> findCycle(List<Set<Integer>> successors, List<Set<Integer>> predecessors)
     {
-        boolean isEdge; // edge from row to column in adjMat
+        int n = vertexList.size();
+        boolean[] acyclic = acyclicVertices(successors, predecessors);
 
-        for (int row = 0; row < vertexList.size(); row++) {
-            isEdge = false; // check edges
-            for (int col = 0; col < vertexList.size(); col++) {
-                if (matrix.get(row).get(col)) {// if edge to another,
-                    isEdge = true;
-                    break; // this vertex has a successor try another
+        int start = -1;
+        for (int i=0; i<n && start == -1; ++i) {
+            if (!acyclic[i]) {
+                start = i;
+            }
+        }
+        if (start == -1) {
+            // Only self-edges
+            for (int i=0; i<n; ++i) {
+                if (successors.get(i).contains(i)) {
+                    return Arrays.asList(vertexList.get(i).value, vertexList.get(i).value);
                 }
             }
-            if (!isEdge) // if no edges, has no successors
-                return row;
+            return Collections.emptyList();
         }
-        return -1; // no
+        return walkCycle(start, predecessors, p -> !acyclic[p]);
+    }
+
+    // Walks predecessors that pass the filter until a vertex repeats, then the walk from its first visit is the cycle.
+    // Every vertex passing the filter needs a predecessor that also passes it
+    private List<T> walkCycle(int start, List<Set<Integer>> predecessors, IntPredicate filter)
+    {
+        Map<Integer, Integer> seenAt = new HashMap<>();
+        List<Integer> walk = new ArrayList<>();
+        int v = start;
+        while (!seenAt.containsKey(v)) {
+            seenAt.put(v, walk.size());
+            walk.add(v);
+            for (int p : predecessors.get(v)) {
+                if (p != v && filter.test(p)) {
+                    v = p;
+                    break;
+                }
+            }
+        }
+        List<T> cycle = new ArrayList<>();
+        for (int i=seenAt.get(v); i<walk.size(); ++i) {
+            cycle.add(vertexList.get(walk.get(i)).value);
+        }
+        cycle.add(vertexList.get(v).value);
+        return cycle;
     }
 
     public void deleteVertex(int delVert)
     {
         vertexList.remove(delVert);
-
-        for (List<Boolean> row : matrix) {
-            row.remove(delVert);
+        successors.remove(delVert);
+        predecessors.remove(delVert);
+        requiredSuccessors.remove(delVert);
+        requiredPredecessors.remove(delVert);
+
+        for (List<Set<Integer>> edges : Arrays.asList(successors, predecessors, requiredSuccessors, requiredPredecessors)) {
+            for (int i=0; i<edges.size(); ++i) {
+                Set<Integer> renumbered = new LinkedHashSet<>();
+                for (int e : edges.get(i)) {
+                    if (e != delVert) {
+                        renumbered.add(e > delVert ? e - 1 : e);
+                    }
+                }
+                edges.set(i, renumbered);
+            }
         }
-        matrix.remove(delVert);
     }
 
-    private class Dependencies
+    // Linked list of vertices that can tell which of two comes first without walking it.
+    // Each vertex has a label that increases along the list, when there's no room between
+    // two labels for an insert, the whole list is spread back out
+    private static class Order
     {
-        class Node
+        private static final long GAP = 1L << 32;
+
+        private final int[] prev;
+        private final int[] next;
+        private final long[] label;
+        private final boolean[] placed;
+        private int head = -1;
+        private int tail = -1;
+
+        Order(int n)
         {
-            List<T> children = new ArrayList<>();
+            prev = new int[n];
+            next = new int[n];
+            label = new long[n];
+            placed = new boolean[n];
         }
 
-        private Map<T, Node> Nodes = new HashMap<>();
-
-        private Set<T> visitedNodes = new HashSet<>();
+        boolean contains(int v)
+        {
+            return placed[v];
+        }
 
-        Dependencies()
+        boolean isBefore(int a, int b)
         {
-            for (int i=0; i<vertexList.size(); ++i) {
-                Node node = Nodes.get(vertexList.get(i).value);
-                if (node == null) {
-                    node = new Node();
-                    Nodes.put(vertexList.get(i).value, node);
-                }
+            return label[a] < label[b];
+        }
 
-                for (int j=0; j<vertexList.size(); ++j) {
-                    if (i == j) continue;
+        int compare(int a, int b)
+        {
+            return Long.compare(label[a], label[b]);
+        }
 
-                    if (matrix.get(j).get(i)) {
-                        node.children.add(vertexList.get(j).value);
-                    }
-                }
-            }
+        int first()
+        {
+            return head;
         }
 
-        boolean doesXHaveDirectDependencyOnY(T x, T y)
+        int next(int v)
         {
-            Node node = Nodes.get(x);
-            if (node != null) {
-                if (node.children.contains(y)) {
-                    return true;
-                }
-            }
-            return false;
+            return next[v];
         }
 
-        boolean doesXHaveTransientDependencyOnY(T x, T y)
+        // before == -1 appends
+        void insertBefore(int v, int before)
         {
-            if (!visitedNodes.add(x)) {
-                return false;
+            int after = before == -1 ? tail : prev[before];
+            prev[v] = after;
+            next[v] = before;
+            if (after == -1) {
+                head = v;
+            } else {
+                next[after] = v;
             }
+            if (before == -1) {
+                tail = v;
+            } else {
+                prev[before] = v;
+            }
+            placed[v] = true;
+
+            long lo = after == -1 ? 0 : label[after];
+            if (before == -1) {
+                label[v] = lo + GAP;
+            } else if (label[before] - lo > 1) {
+                label[v] = lo + (label[before] - lo) / 2;
+            } else {
+                relabel();
+            }
+        }
 
-            if (doesXHaveDirectDependencyOnY(x, y)) {
-                return true;
+        void remove(int v)
+        {
+            if (prev[v] == -1) {
+                head = next[v];
+            } else {
+                next[prev[v]] = next[v];
             }
-            Node node = Nodes.get(x);
-            if (node != null) {
-                for (T t : node.children) {
-                    if (doesXHaveTransientDependencyOnY(t, y)) {
-                        return true;
-                    }
-                }
+            if (next[v] == -1) {
+                tail = prev[v];
+            } else {
+                prev[next[v]] = prev[v];
             }
+            placed[v] = false;
+        }
 
-            return false;
+        private void relabel()
+        {
+            long l = 0;
+            for (int v = head; v != -1; v = next[v]) {
+                l += GAP;
+                label[v] = l;
+            }
         }
     }
 }
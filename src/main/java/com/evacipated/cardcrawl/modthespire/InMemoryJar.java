@@ -0,0 +1,232 @@
+package com.evacipated.cardcrawl.modthespire;
+
+import javassist.ClassPath;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// A jar held in memory as its raw bytes plus the central directory, entries are only
+// inflated the first time they're asked for. Jars bundled inside ModTheSpire (corepatches)
+// are read once and shared by every MTSClassLoader and ClassPool that uses them
+public class InMemoryJar implements ClassPath
+{
+    private static final Map<String, InMemoryJar> bundled = new ConcurrentHashMap<>();
+
+    private static final int END_OF_CENTRAL_DIR = 0x06054b50;
+    private static final int CENTRAL_DIR_ENTRY = 0x02014b50;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private final byte[] data;
+    private final Map<String, Entry> entries;
+    private final Map<String, byte[]> inflated = new ConcurrentHashMap<>();
+
+    private static class Entry
+    {
+        final int method;
+        final int compressedSize;
+        final int size;
+        final int localHeader;
+
+        Entry(int method, int compressedSize, int size, int localHeader)
+        {
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeader = localHeader;
+        }
+    }
+
+    // A jar inside ModTheSpire.jar, e.g. Loader.COREPATCHES_JAR
+    public static InMemoryJar bundled(String path) throws IOException
+    {
+        InMemoryJar jar = bundled.get(path);
+        if (jar == null) {
+            synchronized (bundled) {
+                jar = bundled.get(path);
+                if (jar == null) {
+                    InputStream is = Loader.class.getResourceAsStream(path);
+                    if (is == null) {
+                        throw new IOException("Missing " + path);
+                    }
+                    try (InputStream in = is) {
+                        jar = new InMemoryJar(in);
+                    }
+                    bundled.put(path, jar);
+                }
+            }
+        }
+        return jar;
+    }
+
+    public InMemoryJar(InputStream is) throws IOException
+    {
+        data = readAll(is);
+        entries = Collections.unmodifiableMap(readCentralDirectory());
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(is.available(), 8192));
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = is.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private Map<String, Entry> readCentralDirectory() throws IOException
+    {
+        // End of central directory record is the last thing in the file, followed by a comment of up to 64KB
+        int end = -1;
+        for (int i = data.length - 22; i >= 0 && i >= data.length - 22 - 0xFFFF; --i) {
+            if (int32(i) == END_OF_CENTRAL_DIR) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) {
+            throw new IOException("Not a jar: no central directory");
+        }
+
+        int count = int16(end + 10);
+        int pos = int32(end + 16);
+        Map<String, Entry> ret = new HashMap<>(count * 2);
+        for (int i = 0; i < count; ++i) {
+            if (pos + 46 > data.length || int32(pos) != CENTRAL_DIR_ENTRY) {
+                throw new IOException("Not a jar: bad central directory entry " + i);
+            }
+            int method = int16(pos + 10);
+            int compressedSize = int32(pos + 20);
+            int size = int32(pos + 24);
+            int nameLength = int16(pos + 28);
+            int extraLength = int16(pos + 30);
+            int commentLength = int16(pos + 32);
+            int localHeader = int32(pos + 42);
+            String name = new String(data, pos + 46, nameLength, StandardCharsets.UTF_8);
+            if (!name.endsWith("/")) {
+                ret.put(name, new Entry(method, compressedSize, size, localHeader));
+            }
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+        return ret;
+    }
+
+    private int int16(int i)
+    {
+        return (data[i] & 0xFF) | (data[i + 1] & 0xFF) << 8;
+    }
+
+    private int int32(int i)
+    {
+        return int16(i) | int16(i + 2) << 16;
+    }
+
+    public Set<String> names()
+    {
+        return entries.keySet();
+    }
+
+    public boolean containsClass(String className)
+    {
+        return entries.containsKey(className.replace('.', '/') + ".class");
+    }
+
+    // Contents of a file in the jar, null if there isn't one
+    public byte[] get(String name)
+    {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        return inflated.computeIfAbsent(name, k -> inflate(k, entry));
+    }
+
+    public byte[] getClassBytes(String className)
+    {
+        return get(className.replace('.', '/') + ".class");
+    }
+
+    // Anything that isn't a class
+    public byte[] getResource(String name)
+    {
+        if (name.endsWith(".class")) {
+            return null;
+        }
+        return get(name);
+    }
+
+    private byte[] inflate(String name, Entry entry)
+    {
+        // The local header's extra field can differ from the central directory's
+        int start = entry.localHeader + 30 + int16(entry.localHeader + 26) + int16(entry.localHeader + 28);
+        byte[] ret = new byte[entry.size];
+        if (entry.method == STORED) {
+            System.arraycopy(data, start, ret, 0, entry.size);
+            return ret;
+        }
+        if (entry.method != DEFLATED) {
+            throw new IllegalStateException(name + ": unsupported compression method " + entry.method);
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            // nowrap Inflater wants one byte past the compressed data
+            inflater.setInput(data, start, Math.min(entry.compressedSize + 1, data.length - start));
+            int off = 0;
+            while (off < ret.length && !inflater.finished()) {
+                int n = inflater.inflate(ret, off, ret.length - off);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                off += n;
+            }
+            if (off != ret.length) {
+                throw new IllegalStateException(name + ": truncated, got " + off + " of " + ret.length + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException(name, e);
+        } finally {
+            inflater.end();
+        }
+        return ret;
+    }
+
+    @Override
+    public InputStream openClassfile(String classname)
+    {
+        byte[] bytes = getClassBytes(classname);
+        if (bytes != null) {
+            return new ByteArrayInputStream(bytes);
+        }
+        return null;
+    }
+
+    @Override
+    public URL find(String classname)
+    {
+        if (containsClass(classname)) {
+            try {
+                // Same URL javassist's ByteArrayClassPath gave these classes
+                return new URL("file:/ByteArrayClassPath/" + classname.replace('.', '/') + ".class");
+            } catch (MalformedURLException ignored) {}
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {}
+}
@@ -0,0 +1,164 @@
+package com.evacipated.cardcrawl.modthespire;
+
+import com.evacipated.cardcrawl.modthespire.lib.SpireInitializer;
+import com.evacipated.cardcrawl.modthespire.patcher.PatchTimingReport;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs @SpireInitializers in mod load order on the calling thread, except ones marked threadSafe,
+// which go to a worker pool and start as soon as every mod they depend on (dependencies and
+// optional_dependencies that are loaded) has finished initializing.
+// A mod only counts as finished once everything it depends on has, whether or not it has
+// initializers of its own, so waiting on a mod also waits on its dependencies' dependencies
+class InitializerRunner
+{
+    private final ClassLoader loader;
+    private final PatchTimingReport timings;
+    // Mod ID -> that mod's initializers and its dependencies finishing
+    private final Map<String, CompletableFuture<Void>> finished = new HashMap<>();
+    private final List<CompletableFuture<Void>> running = new ArrayList<>();
+    private ExecutorService workers = null;
+
+    InitializerRunner(ClassLoader loader, PatchTimingReport timings)
+    {
+        this.loader = loader;
+        this.timings = timings;
+    }
+
+    // Every mod has to go through here, even one without initializers, for the mods depending on it
+    void initialize(ModInfo info, Iterable<String> initializers) throws ClassNotFoundException, InvocationTargetException, IllegalAccessException
+    {
+        CompletableFuture<Void> dependencies = dependencies(info);
+        List<CompletableFuture<Void>> modInits = new ArrayList<>();
+
+        for (String initializer : initializers) {
+            Class<?> cls = loader.loadClass(initializer);
+            Method init = null;
+            try {
+                if (info.ID.startsWith("__sideload_")) {
+                    init = cls.getDeclaredMethod("sideload");
+                }
+                if (init == null) {
+                    init = cls.getDeclaredMethod("initialize");
+                }
+            } catch (NoSuchMethodException e) {
+                System.out.println("WARNING: Unable to find method initialize() on class marked @SpireInitializer: " + initializer);
+                continue;
+            }
+
+            SpireInitializer annotation = cls.getAnnotation(SpireInitializer.class);
+            if (annotation != null && annotation.phase() == SpireInitializer.Phase.DEFERRED) {
+                System.out.println("   - " + initializer + " (deferred)");
+                DeferredInitializers.add(info.ID, initializer, init, timings);
+            } else if (annotation != null && annotation.threadSafe()) {
+                System.out.println("   - " + initializer + " (thread safe)");
+                Method threadSafeInit = init;
+                CompletableFuture<Void> f = dependencies.thenRunAsync(() -> {
+                    try {
+                        invoke(info, initializer, threadSafeInit, true);
+                    } catch (InvocationTargetException | IllegalAccessException e) {
+                        throw new CompletionException(e);
+                    }
+                }, workers());
+                modInits.add(f);
+                running.add(f);
+            } else {
+                System.out.println("   - " + initializer);
+                join(dependencies);
+                invoke(info, initializer, init, false);
+            }
+        }
+
+        modInits.add(dependencies);
+        CompletableFuture<Void> done = CompletableFuture.allOf(modInits.toArray(new CompletableFuture[0]));
+        finished.put(info.ID, done);
+        if (info.ID.startsWith("__sideload_")) {
+            finished.put(info.ID.substring("__sideload_".length()), done);
+        }
+    }
+
+    // Waits for the thread safe initializers still running
+    void finish() throws InvocationTargetException, IllegalAccessException
+    {
+        join(CompletableFuture.allOf(running.toArray(new CompletableFuture[0])));
+    }
+
+    void shutdown()
+    {
+        if (workers != null) {
+            workers.shutdown();
+            workers = null;
+        }
+    }
+
+    private void invoke(ModInfo info, String initializer, Method init, boolean threadSafe) throws InvocationTargetException, IllegalAccessException
+    {
+        long startTime = System.nanoTime();
+        init.invoke(null);
+        long duration = System.nanoTime() - startTime;
+        if (threadSafe) {
+            System.out.println("   - " + initializer + ": " + (duration / 1000000) + "ms on " + Thread.currentThread().getName());
+        } else {
+            System.out.println("   - " + (duration / 1000000) + "ms");
+        }
+        timings.record("initializer", info.ID, initializer, startTime);
+    }
+
+    private CompletableFuture<Void> dependencies(ModInfo info)
+    {
+        List<CompletableFuture<Void>> deps = new ArrayList<>();
+        for (String[] ids : new String[][]{info.Dependencies, info.OptionalDependencies}) {
+            for (String id : ids) {
+                CompletableFuture<Void> f = finished.get(id);
+                if (f != null) {
+                    deps.add(f);
+                }
+            }
+        }
+        return CompletableFuture.allOf(deps.toArray(new CompletableFuture[0]));
+    }
+
+    private ExecutorService workers()
+    {
+        if (workers == null) {
+            ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+            AtomicInteger count = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                Thread t = new Thread(r, "SpireInitializer-" + count.incrementAndGet());
+                t.setDaemon(true);
+                t.setContextClassLoader(contextLoader);
+                return t;
+            });
+        }
+        return workers;
+    }
+
+    private static void join(CompletableFuture<?> f) throws InvocationTargetException, IllegalAccessException
+    {
+        try {
+            f.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InvocationTargetException) {
+                throw (InvocationTargetException) cause;
+            } else if (cause instanceof IllegalAccessException) {
+                throw (IllegalAccessException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.evacipated.cardcrawl.modthespire;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// SHA-1 of a jar, used to key the on-disk caches built from it.
+// Remembered for as long as the file's size and modified time don't change,
+// so a jar is only read through once per launch
+class JarHash
+{
+    private static final Map<String, JarHash> hashes = new ConcurrentHashMap<>();
+
+    private final long length;
+    private final long lastModified;
+    private final String hash;
+
+    private JarHash(long length, long lastModified, String hash)
+    {
+        this.length = length;
+        this.lastModified = lastModified;
+        this.hash = hash;
+    }
+
+    static String of(File jar) throws IOException
+    {
+        String key = jar.getAbsolutePath();
+        JarHash known = hashes.get(key);
+        if (known != null && known.length == jar.length() && known.lastModified == jar.lastModified()) {
+            return known.hash;
+        }
+
+        long length = jar.length();
+        long lastModified = jar.lastModified();
+        String hash = hash(jar);
+        hashes.put(key, new JarHash(length, lastModified, hash));
+        return hash;
+    }
+
+    private static String hash(File jar) throws IOException
+    {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            try (InputStream is = new DigestInputStream(new BufferedInputStream(new FileInputStream(jar)), md)) {
+                byte[] buf = new byte[8192];
+                //noinspection StatementWithEmptyBody
+                while (is.read(buf) != -1) {
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+}
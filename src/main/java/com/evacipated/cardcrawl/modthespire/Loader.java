@@ -1,6 +1,8 @@
 package com.evacipated.cardcrawl.modthespire;
 
 import com.evacipated.cardcrawl.modthespire.lib.SpireConfig;
+import com.evacipated.cardcrawl.modthespire.lib.SpireFieldSideTable;
+import com.evacipated.cardcrawl.modthespire.patcher.PatchContext;
 import com.evacipated.cardcrawl.modthespire.steam.SteamSearch;
 import com.evacipated.cardcrawl.modthespire.steam.SteamWorkshop;
 import com.evacipated.cardcrawl.modthespire.ui.ModSelectWindow;
@@ -50,6 +52,7 @@ public class Loader
     public static String JRE_51_DIR = "jre1.8.0_51";
     public static ModInfo[] MODINFOS;
     private static ModInfo[] ALLMODINFOS;
+    private static volatile ModRegistry REGISTRY;
     private static ClassPool POOL;
     private static List<SteamSearch.WorkshopInfo> WORKSHOP_INFOS;
 
@@ -63,29 +66,36 @@ public class Loader
     public static String[] ARGS;
     public static boolean SKIP_INTRO = false;
     public static boolean LWJGL3_ENABLED = false;
+    public static boolean BYTECODE_ENUMS = false;
+    public static boolean OUTLINE_PATCHES = false;
+    public static boolean PATCH_TIMINGS = false;
+    public static boolean VERIFY_PATCHES = false;
+    public static boolean PATCH_SIZES = false;
+    public static boolean SIDE_TABLE_SIZES = false;
     private static ModSelectWindow ex;
 
     private static final List<URL> extraJars = new ArrayList<>();
 
-    public static boolean isModLoaded(String modID)
+    // Registry for the current MODINFOS, rebuilt whenever MODINFOS is replaced
+    public static ModRegistry getModRegistry()
     {
-        for (int i=0; i<MODINFOS.length; ++i) {
-            if (modID.equals(MODINFOS[i].ID)) {
-                return true;
-            }
+        ModRegistry registry = REGISTRY;
+        ModInfo[] modInfos = MODINFOS;
+        if (registry == null || !registry.builtFrom(modInfos)) {
+            registry = new ModRegistry(modInfos);
+            REGISTRY = registry;
         }
-        return false;
+        return registry;
+    }
+
+    public static boolean isModLoaded(String modID)
+    {
+        return getModRegistry().isLoaded(modID);
     }
 
     public static boolean isModSideloaded(String modID)
     {
-        modID = "__sideload_" + modID;
-        for (int i=0; i<MODINFOS.length; ++i) {
-            if (modID.equals(MODINFOS[i].ID)) {
-                return true;
-            }
-        }
-        return false;
+        return getModRegistry().isSideloaded(modID);
     }
 
     public static boolean isModLoadedOrSideloaded(String modID)
@@ -147,6 +157,12 @@ public class Loader
             defaults.setProperty("allow-beta", Boolean.toString(true));
             defaults.setProperty("skip-launcher", Boolean.toString(false));
             defaults.setProperty("skip-intro", Boolean.toString(false));
+            defaults.setProperty("bytecode-enums", Boolean.toString(false));
+            defaults.setProperty("outline-patches", Boolean.toString(false));
+            defaults.setProperty("patch-timings", Boolean.toString(false));
+            defaults.setProperty("verify-patches", Boolean.toString(false));
+            defaults.setProperty("patch-sizes", Boolean.toString(false));
+            defaults.setProperty("side-table-sizes", Boolean.toString(false));
             defaults.setProperty("mods", "");
             defaults.putAll(ModSelectWindow.getDefaults());
             MTS_CONFIG = new SpireConfig(null, "ModTheSpire", defaults);
@@ -160,6 +176,12 @@ public class Loader
         allowBeta = MTS_CONFIG.getBool("allow-beta");
         boolean skipLauncher = MTS_CONFIG.getBool("skip-launcher");
         SKIP_INTRO = MTS_CONFIG.getBool("skip-intro");
+        BYTECODE_ENUMS = MTS_CONFIG.getBool("bytecode-enums");
+        OUTLINE_PATCHES = MTS_CONFIG.getBool("outline-patches");
+        PATCH_TIMINGS = MTS_CONFIG.getBool("patch-timings");
+        VERIFY_PATCHES = MTS_CONFIG.getBool("verify-patches");
+        PATCH_SIZES = MTS_CONFIG.getBool("patch-sizes");
+        SIDE_TABLE_SIZES = MTS_CONFIG.getBool("side-table-sizes");
         profileArg = MTS_CONFIG.getString("profile");
         String modIds = MTS_CONFIG.getString("mods");
         if (!LWJGL3_ENABLED) {
@@ -193,6 +215,24 @@ public class Loader
         if (argList.contains("--imgui")) {
             LWJGL3_ENABLED = true;
         }
+        if (argList.contains("--bytecode-enums")) {
+            BYTECODE_ENUMS = true;
+        }
+        if (argList.contains("--outline-patches")) {
+            OUTLINE_PATCHES = true;
+        }
+        if (argList.contains("--patch-timings")) {
+            PATCH_TIMINGS = true;
+        }
+        if (argList.contains("--verify-patches")) {
+            VERIFY_PATCHES = true;
+        }
+        if (argList.contains("--patch-sizes")) {
+            PATCH_SIZES = true;
+        }
+        if (argList.contains("--side-table-sizes")) {
+            SIDE_TABLE_SIZES = true;
+        }
 
         int profileArgIndex = argList.indexOf("--profile");
         if (profileArgIndex >= 0 && argList.size() > profileArgIndex + 1) {
@@ -391,6 +431,18 @@ public class Loader
         ex.requestFocus();
     }
 
+    // Copies this launch's switches into the session, the patcher only reads them from there
+    private static void configure(PatchSession session)
+    {
+        session.setGameJar(STS_JAR);
+        session.getTimings().setEnabled(PATCH_TIMINGS);
+        PatchContext context = session.getContext();
+        context.setBytecodeEnums(BYTECODE_ENUMS);
+        context.setOutlinePatches(OUTLINE_PATCHES);
+        context.setVerifyPatches(VERIFY_PATCHES);
+        context.setPatchSizes(PATCH_SIZES);
+    }
+
     // runMods - sets up the ClassLoader, sets the isModded flag and launches the game
     public static void runMods(File[] modJars)
     {
@@ -398,6 +450,9 @@ public class Loader
             System.out.println("Running with debug mode turned ON...");
             System.out.println();
         }
+        if (Loader.SIDE_TABLE_SIZES || Loader.DEBUG) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> SpireFieldSideTable.printReport(System.out)));
+        }
         try {
             {
                 ModInfo[] modInfos = buildInfoArray(modJars, manualModIds);
@@ -414,55 +469,61 @@ public class Loader
                 unpackJar(LWJGL3_JAR);
             }
 
-            MTSClassLoader loader = new MTSClassLoader(Loader.class.getResourceAsStream(COREPATCHES_JAR), buildUrlArray(MODINFOS), Loader.class.getClassLoader());
+            MTSClassLoader loader = new MTSClassLoader(InMemoryJar.bundled(COREPATCHES_JAR), buildUrlArray(MODINFOS), Loader.class.getClassLoader());
 
             if (modJars.length > 0) {
-                MTSClassLoader tmpPatchingLoader = new MTSClassLoader(Loader.class.getResourceAsStream(COREPATCHES_JAR), buildUrlArray(MODINFOS), Loader.class.getClassLoader());
-                
                 System.out.println("Begin patching...");
-                MTSClassPool pool = new MTSClassPool(tmpPatchingLoader);
+                MTSClassPool pool = new MTSClassPool(loader);
+                PatchSession session = new PatchSession(MODINFOS, pool, STS_VERSION);
+                configure(session);
+                session.activate();
+                //noinspection deprecation
+                Patcher.annotationDBMap = session.getAnnotationDBMap();
+
+                MODINFOS = Patcher.sideloadMods(session, loader, ALLMODINFOS);
 
-                MODINFOS = Patcher.sideloadMods(tmpPatchingLoader, loader, pool, ALLMODINFOS, MODINFOS);
+                // Same order the ClassLoader searches in
+                Patcher.indexHierarchy(session, buildUrlArray(MODINFOS), InMemoryJar.bundled(COREPATCHES_JAR));
 
                 // Patch enums
                 System.out.printf("Patching enums...");
-                Patcher.patchEnums(tmpPatchingLoader, pool, Loader.class.getResource(Loader.COREPATCHES_JAR));
+                Patcher.patchEnums(session, Loader.class.getResource(Loader.COREPATCHES_JAR));
                 // Patch SpireEnums from mods
-                Patcher.patchEnums(tmpPatchingLoader, pool, MODINFOS);
+                Patcher.patchEnums(session, MODINFOS);
+                Patcher.extendEnums(session);
                 System.out.println("Done.");
 
                 // Find and inject core patches
                 System.out.println("Finding core patches...");
-                Patcher.injectPatches(tmpPatchingLoader, pool, Patcher.findPatches(new URL[]{Loader.class.getResource(Loader.COREPATCHES_JAR)}));
+                Patcher.injectPatches(session, Patcher.findPatches(session, new URL[]{Loader.class.getResource(Loader.COREPATCHES_JAR)}));
                 // Find and inject mod patches
                 System.out.println("Finding patches...");
-                Patcher.injectPatches(tmpPatchingLoader, pool, Patcher.findPatches(MODINFOS));
+                Patcher.injectPatches(session, Patcher.findPatches(session, MODINFOS));
 
-                Patcher.patchOverrides(tmpPatchingLoader, pool, MODINFOS);
+                Patcher.patchOverrides(session);
 
-                Patcher.finalizePatches(tmpPatchingLoader);
+                Patcher.finalizePatches(session);
 
-                ClassPath cp = Patcher.compilePatches(loader, pool);
+                ClassPath cp = Patcher.compilePatches(session, loader);
 
-                tmpPatchingLoader.close();
+                session.closePatchingLoader();
 
-                pool.resetClassLoader(loader);
                 pool.insertClassPath(cp);
                 POOL = pool;
                 POOL.childFirstLookup = true;
 
                 // Bust enums
                 System.out.printf("Busting enums...");
-                Patcher.bustEnums(loader, Loader.class.getResource(Loader.COREPATCHES_JAR));
+                Patcher.bustEnums(session, loader, Loader.class.getResource(Loader.COREPATCHES_JAR));
                 // Bust SpireEnums from mods
-                Patcher.bustEnums(loader, MODINFOS);
+                Patcher.bustEnums(session, loader, MODINFOS);
                 System.out.println("Done.");
                 System.out.println();
 
                 // Create pre-modded JAR
                 if (Loader.PACKAGE) {
                     System.out.println("Creating prepackaged JAR...");
-                    PackageJar.packageJar(pool, "desktop-1.0-modded.jar");
+                    PackageJar.packageJar(session, "desktop-1.0-modded.jar");
                     System.out.println("Done.");
                     return;
                 }
@@ -498,9 +559,11 @@ public class Loader
 
                 // Initialize any mods that implement SpireInitializer.initialize()
                 System.out.println("Initializing mods...");
-                Patcher.initializeMods(loader, MODINFOS);
+                Patcher.initializeMods(session, loader);
                 System.out.println("Done.");
                 System.out.println();
+
+                Patcher.reportTimings(session);
             }
 
             System.out.println("Starting game...");
@@ -529,6 +592,9 @@ public class Loader
         } catch (MissingModIDException e) {
             System.err.println("ERROR: " + e.getMessage());
             JOptionPane.showMessageDialog(null, e.getMessage(), "Missing Mod ID", JOptionPane.ERROR_MESSAGE);
+        } catch (CyclicDependencyException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            JOptionPane.showMessageDialog(null, e.getMessage(), "Cyclic Dependency", JOptionPane.ERROR_MESSAGE);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -618,7 +684,7 @@ public class Loader
     }
 
     // buildUrlArray - builds the URL array to pass to the ClassLoader
-    private static URL[] buildUrlArray(ModInfo[] modInfos) throws MalformedURLException
+    static URL[] buildUrlArray(ModInfo[] modInfos) throws MalformedURLException
     {
         List<URL> urls = new ArrayList<>(modInfos.length + 1);
 
@@ -785,61 +851,42 @@ public class Loader
 
     private static void checkDependencies(ModInfo[] modinfos) throws MissingDependencyException, DuplicateModIDException
     {
-        Map<String, ModInfo> dependencyMap = new HashMap<>();
+        ModRegistry registry = new ModRegistry(modinfos);
         for (final ModInfo info : modinfos) {
-            if (info.ID != null) {
-                if (!dependencyMap.containsKey(info.ID)) {
-                    dependencyMap.put(info.ID, info);
-                } else {
-                    throw new DuplicateModIDException(dependencyMap.get(info.ID), info);
-                }
+            if (info.ID != null && registry.getMod(info.ID) != info) {
+                throw new DuplicateModIDException(registry.getMod(info.ID), info);
             }
         }
 
         for (final ModInfo info : modinfos) {
             for (String dependency : info.Dependencies) {
-                boolean has = false;
-                for (final ModInfo dependinfo : modinfos) {
-                    if (dependinfo.ID != null && dependinfo.ID.equals(dependency)) {
-                        has = true;
-                        break;
-                    }
-                }
-                if (!has) {
+                if (!registry.isLoaded(dependency)) {
                     throw new MissingDependencyException(info, dependency);
                 }
             }
         }
     }
 
-    private static int findDependencyIndex(ModInfo[] modInfos, String dependencyID)
-    {
-        for (int i=0; i<modInfos.length; ++i) {
-            if (modInfos[i] != null && modInfos[i].ID != null) {
-                if (modInfos[i].ID.equals(dependencyID)) {
-                    return i;
-                }
-            }
-        }
-        return -1;
-    }
-
     private static ModInfo[] orderDependencies(ModInfo[] modInfos) throws CyclicDependencyException
     {
         GraphTS<ModInfo> g = new GraphTS<>();
 
-        for (final ModInfo info : modInfos) {
-            g.addVertex(info);
+        Map<String, Integer> indexByID = new HashMap<>();
+        for (int i=0; i<modInfos.length; ++i) {
+            g.addVertex(modInfos[i]);
+            if (modInfos[i].ID != null) {
+                indexByID.putIfAbsent(modInfos[i].ID, i);
+            }
         }
 
         for (int i=0; i<modInfos.length; ++i) {
             for (String dependency : modInfos[i].Dependencies) {
-                g.addEdge(findDependencyIndex(modInfos, dependency), i);
+                g.addEdge(indexByID.get(dependency), i);
             }
             for (String optionalDependency : modInfos[i].OptionalDependencies) {
-                int idx = findDependencyIndex(modInfos, optionalDependency);
-                if (idx != -1) {
-                    g.addEdge(idx, i);
+                Integer idx = indexByID.get(optionalDependency);
+                if (idx != null) {
+                    g.addEdge(idx, i, true);
                 }
             }
         }
@@ -1,13 +1,11 @@
 package com.evacipated.cardcrawl.modthespire;
 
-import javassist.ByteArrayClassPath;
 import javassist.ClassPool;
 import javassist.CtClass;
 import sun.misc.Resource;
 import sun.misc.URLClassPath;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
@@ -16,21 +14,21 @@ import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.security.ProtectionDomain;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.jar.JarEntry;
-import java.util.jar.JarInputStream;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.Manifest;
 
 // Custom ClassLoader
 // When loading STS DesktopLauncher (main entry point), skips searching the parent classloader
 // Parent classloader is us and will find our fake DesktopLauncher rather than the real game
-// Also loads from an InputStream, in our case the corepatches.jar resource
-// Otherwise acts like URLClassLoader
+// Also loads from an in-memory jar, in our case the corepatches.jar resource
+// Otherwise acts like URLClassLoader, except a class in a package only one side has (going by
+// the jar listings) is loaded straight from that side instead of asking the parent first
 public class MTSClassLoader extends URLClassLoader
 {
     private static final Field packagesField, ucpField;
     private static final Method definePackageInternal;
+    private static final URLClassPath bootstrap = sun.misc.Launcher.getBootstrapClassPath();
     static {
         try {
             packagesField = ClassLoader.class.getDeclaredField("packages");
@@ -44,64 +42,70 @@ public class MTSClassLoader extends URLClassLoader
         } catch (NoSuchFieldException | NoSuchMethodException e) {
             throw new RuntimeException(e);
         }
+
+        registerAsParallelCapable();
     }
 
     private ClassLoader parent;
-    private Map<String, byte[]> classes = new HashMap<>();
-    private Map<String, Class<?>> definedClasses = new HashMap<>();
-    private Map<String, byte[]> resources = new HashMap<>();
+    private final InMemoryJar jar;
+    private Map<String, Class<?>> definedClasses = new ConcurrentHashMap<>();
+    // Packages in our URLs and the in-memory jar, and packages the parent and the loaders above it have.
+    // The bootstrap classpath isn't listed, it's far bigger than everything else, classes are looked up in it instead
+    private final PackageIndex localPackages = new PackageIndex();
+    private final PackageIndex parentPackages = new PackageIndex();
 
     private final Map<String, Package> packages;
     private final URLClassPath ucp;
 
     public MTSClassLoader(InputStream stream, URL[] urls, ClassLoader parent) throws IOException, IllegalAccessException {
+        this(new InMemoryJar(stream), urls, parent);
+    }
+
+    public MTSClassLoader(InMemoryJar jar, URL[] urls, ClassLoader parent) throws IllegalAccessException {
         super(urls, null);
 
         this.parent = parent;
+        this.jar = jar;
 
         //noinspection unchecked
         this.packages = (Map<String, Package>) packagesField.get(this);
         this.ucp = (URLClassPath) ucpField.get(this);
 
-        JarInputStream is = new JarInputStream(stream);
-        JarEntry entry = is.getNextJarEntry();
-        while (entry != null) {
-            if (entry.getName().contains(".class")) {
-                String className = entry.getName().replace(".class", "").replace('/', '.');
-                byte[] classBytes = bufferStream(is);
-                classes.put(className, classBytes);
-            } else if (!entry.isDirectory()) {
-                byte[] bytes = bufferStream(is);
-                resources.put(entry.getName(), bytes);
-            }
-            entry = is.getNextJarEntry();
+        localPackages.addEntries(jar.names());
+        for (URL url : urls) {
+            localPackages.add(url);
         }
+        indexParents(parent);
     }
 
-    @Override
-    public InputStream getResourceAsStream(String name)
+    private void indexParents(ClassLoader loader)
     {
-        if (resources.containsKey(name)) {
-            return new ByteArrayInputStream(resources.get(name));
+        for (; loader != null; loader = loader.getParent()) {
+            if (!(loader instanceof URLClassLoader)) {
+                parentPackages.setIncomplete();
+                return;
+            }
+            for (URL url : ((URLClassLoader) loader).getURLs()) {
+                parentPackages.add(url);
+            }
         }
-        return super.getResourceAsStream(name);
     }
 
-    private byte[] bufferStream(InputStream is) throws IOException
+    @Override
+    public InputStream getResourceAsStream(String name)
     {
-        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        int nextValue = is.read();
-        while (nextValue != -1) {
-            byteStream.write(nextValue);
-            nextValue = is.read();
+        byte[] bytes = jar.getResource(name);
+        if (bytes != null) {
+            return new ByteArrayInputStream(bytes);
         }
-        return byteStream.toByteArray();
+        return super.getResourceAsStream(name);
     }
 
     @Override
     public void addURL(URL url)
     {
         super.addURL(url);
+        localPackages.add(url);
     }
 
     @Override
@@ -112,47 +116,65 @@ public class MTSClassLoader extends URLClassLoader
             throw new ClassNotFoundException();
         }
         if (name.startsWith("com.codedisaster.steamworks") || name.startsWith("com.google.gson") || name.equals("com.megacrit.cardcrawl.desktop.DesktopLauncher")) {
+            return loadLocal(name);
+        }
+
+        Class<?> c = findLoadedClass(name);
+        if (c != null) {
+            return c;
+        }
+
+        String pkg = PackageIndex.packageOf(name);
+        String path = name.replace('.', '/').concat(".class");
+        boolean local = localPackages.owns(pkg);
+        boolean inParent = parentPackages.owns(pkg);
+        if (local && !inParent && parentPackages.isComplete()) {
+            if (bootstrap.getResource(path, false) != null) {
+                return parent.loadClass(name);
+            }
+            return loadLocal(name);
+        }
+        if (inParent && !local && localPackages.isComplete()) {
+            return parent.loadClass(name);
+        }
+
+        // Both sides have the package, or one of them couldn't be listed: parent first, like before
+        if (parent.getResource(path) != null) {
+            return parent.loadClass(name);
+        }
+        return super.loadClass(name);
+    }
+
+    private Class<?> loadLocal(String name) throws ClassNotFoundException
+    {
+        synchronized (getClassLoadingLock(name)) {
             Class<?> c = findLoadedClass(name);
             if (c == null) {
                 c = findClass(name);
-                if (c == null) {
-                    c = super.loadClass(name);
-                }
             }
             return c;
-        } else {
-            try {
-                return parent.loadClass(name);
-            } catch (ClassNotFoundException e) {
-                return super.loadClass(name);
-            }
         }
     }
 
     @Override
     public Class<?> findClass(String name) throws ClassNotFoundException
     {
-        Class<?> ret;
-        try {
-            ret = super.findClass(name);
-        } catch (ClassNotFoundException e) {
-            ret = definedClasses.get(name);
-            if (ret == null) {
-                byte[] classBytes = classes.remove(name);
-                if (classBytes == null)
-                    throw new ClassNotFoundException(name);
-                ret = defineClass(name, classBytes, 0, classBytes.length, (ProtectionDomain) null);
-                definedClasses.put(name, ret);
-            }
+        // Our URLs come before the in-memory jar
+        if (!jar.containsClass(name) || ucp.getResource(name.replace('.', '/').concat(".class"), false) != null) {
+            return super.findClass(name);
+        }
+        Class<?> ret = definedClasses.get(name);
+        if (ret == null) {
+            byte[] classBytes = jar.getClassBytes(name);
+            ret = defineClass(name, classBytes, 0, classBytes.length, (ProtectionDomain) null);
+            definedClasses.put(name, ret);
         }
         return ret;
     }
 
     public void addStreamToClassPool(ClassPool pool)
     {
-        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
-            pool.insertClassPath(new ByteArrayClassPath(entry.getKey(), entry.getValue()));
-        }
+        pool.insertClassPath(jar);
     }
 
     public void registerPackage(CtClass cls) {
@@ -68,9 +68,8 @@ public class MTSClassPool extends ClassPool
                 ret.add(cls);
             }
         }
-        if (Loader.OUT_JAR || Loader.PACKAGE) {
-            outJar = ret;
-        }
+        // Kept for dumping or packaging, the classes are held by the pool anyway
+        outJar = ret;
         return ret;
     }
 
@@ -0,0 +1,92 @@
+package com.evacipated.cardcrawl.modthespire;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Lookups over a list of mods by ID and by jar. Built once from a mod list and never changed,
+// Loader makes a new one when MODINFOS is replaced (e.g. by sideloading)
+public final class ModRegistry
+{
+    private final ModInfo[] modInfos;
+    private final Map<String, ModInfo> byID = new HashMap<>();
+    // Keyed by URL string, URL.hashCode/equals can do DNS lookups
+    private final Map<String, ModInfo> byJar = new HashMap<>();
+    // Mod ID -> IDs of the loaded mods it depends on (dependencies and optional_dependencies)
+    private final Map<String, Set<String>> dependencies = new HashMap<>();
+    // Mod ID -> IDs of the loaded mods that depend on it
+    private final Map<String, Set<String>> dependents = new HashMap<>();
+
+    public ModRegistry(ModInfo[] modInfos)
+    {
+        this.modInfos = modInfos;
+
+        for (ModInfo info : modInfos) {
+            if (info.ID != null) {
+                byID.putIfAbsent(info.ID, info);
+            }
+            if (info.jarURL != null) {
+                byJar.putIfAbsent(info.jarURL.toString(), info);
+            }
+        }
+
+        for (ModInfo info : modInfos) {
+            if (info.ID == null) {
+                continue;
+            }
+            Set<String> deps = new LinkedHashSet<>();
+            for (String[] ids : new String[][]{info.Dependencies, info.OptionalDependencies}) {
+                if (ids == null) {
+                    continue;
+                }
+                for (String id : ids) {
+                    if (byID.containsKey(id)) {
+                        deps.add(id);
+                        dependents.computeIfAbsent(id, k -> new LinkedHashSet<>()).add(info.ID);
+                    }
+                }
+            }
+            dependencies.put(info.ID, Collections.unmodifiableSet(deps));
+        }
+        dependents.replaceAll((k, v) -> Collections.unmodifiableSet(v));
+    }
+
+    boolean builtFrom(ModInfo[] modInfos)
+    {
+        return this.modInfos == modInfos;
+    }
+
+    // First mod with this ID, null if there isn't one
+    public ModInfo getMod(String modID)
+    {
+        return byID.get(modID);
+    }
+
+    public ModInfo getMod(URL jarURL)
+    {
+        return jarURL == null ? null : byJar.get(jarURL.toString());
+    }
+
+    public boolean isLoaded(String modID)
+    {
+        return byID.containsKey(modID);
+    }
+
+    public boolean isSideloaded(String modID)
+    {
+        return byID.containsKey("__sideload_" + modID);
+    }
+
+    public Set<String> getDependencies(String modID)
+    {
+        return dependencies.getOrDefault(modID, Collections.emptySet());
+    }
+
+    public Set<String> getDependents(String modID)
+    {
+        return dependents.getOrDefault(modID, Collections.emptySet());
+    }
+}
@@ -7,6 +7,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Set;
 import java.util.jar.JarEntry;
@@ -26,6 +28,10 @@ class OutJar
         }
     }
 
+    // Fixed entry timestamp so that dumping the same classes always produces the same jar.
+    // Local midnight so the stored DOS time doesn't depend on the time zone
+    private static final long ENTRY_TIME = new GregorianCalendar(1980, 0, 1).getTimeInMillis();
+
     /* https://stackoverflow.com/questions/22591903/javassist-how-to-inject-a-method-into-a-class-in-jar?utm_medium=organic&utm_source=google_rich_qa&utm_campaign=google_rich_qa */
     public static class JarHandler
     {
@@ -47,6 +53,7 @@ class OutJar
                             String fileName = file.path;
                             byte[] fileByteCode = file.b;
                             JarEntry entry = new JarEntry(fileName);
+                            entry.setTime(ENTRY_TIME);
                             tempJar.putNextEntry(entry);
                             tempJar.write(fileByteCode);
                         }
@@ -92,6 +99,7 @@ class OutJar
                 // eat it - just means this isn't a file we've loaded
             }
         }
+        files.sort(Comparator.comparing(f -> f.path));
         JarHandler handler = new JarHandler();
         handler.writeOut(jarPath, files);
     }
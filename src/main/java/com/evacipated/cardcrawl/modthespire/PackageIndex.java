@@ -0,0 +1,108 @@
+package com.evacipated.cardcrawl.modthespire;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+// Which packages a set of jars have classes in, read from the jar listings.
+// Only complete if every jar could be listed, otherwise a package missing from it proves nothing
+class PackageIndex
+{
+    // Jar URL -> its packages, a jar is only listed once however many loaders use it
+    private static final Map<String, Set<String>> byJar = new ConcurrentHashMap<>();
+
+    private final Set<String> packages = ConcurrentHashMap.newKeySet();
+    private volatile boolean complete = true;
+
+    void add(URL url)
+    {
+        Set<String> jarPackages = packagesOf(url);
+        if (jarPackages == null) {
+            complete = false;
+        } else {
+            packages.addAll(jarPackages);
+        }
+    }
+
+    // Entry names as they appear in a jar
+    void addEntries(Iterable<String> names)
+    {
+        for (String name : names) {
+            if (name.endsWith(".class")) {
+                packages.add(entryPackage(name));
+            }
+        }
+    }
+
+    void setIncomplete()
+    {
+        complete = false;
+    }
+
+    boolean isComplete()
+    {
+        return complete;
+    }
+
+    boolean owns(String pkg)
+    {
+        return packages.contains(pkg);
+    }
+
+    static String packageOf(String className)
+    {
+        int i = className.lastIndexOf('.');
+        return i == -1 ? "" : className.substring(0, i);
+    }
+
+    private static String entryPackage(String entryName)
+    {
+        int i = entryName.lastIndexOf('/');
+        return i == -1 ? "" : entryName.substring(0, i).replace('/', '.');
+    }
+
+    private static Set<String> packagesOf(URL url)
+    {
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        Set<String> ret = byJar.get(url.toString());
+        if (ret != null) {
+            return ret;
+        }
+
+        File file;
+        try {
+            file = new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+        if (!file.isFile()) {
+            return null;
+        }
+        ret = new HashSet<>();
+        try (JarFile jar = new JarFile(file)) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(".class")) {
+                    ret.add(entryPackage(name));
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        ret = Collections.unmodifiableSet(ret);
+        byJar.put(url.toString(), ret);
+        return ret;
+    }
+}
@@ -7,6 +7,7 @@ import com.megacrit.cardcrawl.core.CardCrawlGame;
 import com.megacrit.cardcrawl.desktop.DesktopLauncher;
 import javassist.*;
 import org.apache.commons.lang3.NotImplementedException;
+import org.scannotation.AnnotationDB;
 
 import java.io.*;
 import java.lang.reflect.Field;
@@ -99,11 +100,7 @@ class PackageJar
         {
             this.path = path;
             this.b = b;
-            try {
-                if (!Objects.equals(locationURL, new File(Loader.STS_JAR).toURI().toURL())) {
-                    this.locationURL = locationURL;
-                }
-            } catch (MalformedURLException ignored) {}
+            this.locationURL = locationURL;
             type = Type.OUTJAR;
         }
 
@@ -230,8 +227,11 @@ class PackageJar
         srcJar.close();
     }
 
-    private static CtClass setupPrepackagedLauncher(MTSClassPool pool)
+    private static CtClass setupPrepackagedLauncher(PatchSession session)
     {
+        ClassPool pool = session.getPool();
+        Map<URL, AnnotationDB> annotationDBMap = session.getAnnotationDBMap();
+        ModInfo[] modInfos = session.getModInfos();
         try {
             CtClass ctClass = pool.get(PrepackagedLauncher.class.getName());
             pool.importPackage("java.net");
@@ -242,9 +242,9 @@ class PackageJar
             CtMethod ctMethod = ctClass.getDeclaredMethod("callInitializers");
             StringBuilder src = new StringBuilder("{\n");
 
-            for (ModInfo info : Loader.MODINFOS) {
-                if (Patcher.annotationDBMap.containsKey(info.jarURL)) {
-                    Set<String> initializers = Patcher.annotationDBMap.get(info.jarURL).getAnnotationIndex().get(SpireInitializer.class.getName());
+            for (ModInfo info : modInfos) {
+                if (annotationDBMap.containsKey(info.jarURL)) {
+                    Set<String> initializers = annotationDBMap.get(info.jarURL).getAnnotationIndex().get(SpireInitializer.class.getName());
                     if (initializers != null) {
                         for (String initializer : initializers) {
                             src.append(initializer).append(".");
@@ -273,7 +273,7 @@ class PackageJar
             ctMethod = ctClass.getDeclaredMethod("getModInfos");
             src.setLength(0);
             src.append("{\n");
-            src.append(ModInfo.class.getName()).append("[] ret = new ").append(ModInfo.class.getName()).append("[").append(Loader.MODINFOS.length).append("];\n");
+            src.append(ModInfo.class.getName()).append("[] ret = new ").append(ModInfo.class.getName()).append("[").append(modInfos.length).append("];\n");
 
             src.append("Gson gson = new GsonBuilder()\n")
                 .append(".excludeFieldsWithModifiers(new int[] {java.lang.reflect.Modifier.STATIC})\n")
@@ -286,16 +286,16 @@ class PackageJar
                 .create();
 
             src.append("URL baseURL = ").append(PrepackagedLauncher.class.getName()).append(".class.getProtectionDomain().getCodeSource().getLocation();\n");
-            for (int i=0; i<Loader.MODINFOS.length; ++i) {
-                URL oldURL = Loader.MODINFOS[i].jarURL;
+            for (int i=0; i<modInfos.length; ++i) {
+                URL oldURL = modInfos[i].jarURL;
                 try {
-                    Loader.MODINFOS[i].jarURL = Paths.get("package").resolve(Paths.get(oldURL.toURI()).getFileName()).toUri().toURL();
-                    Loader.MODINFOS[i].jarURL = new URL("file:package/" + Paths.get(oldURL.toURI()).getFileName().toString());
+                    modInfos[i].jarURL = Paths.get("package").resolve(Paths.get(oldURL.toURI()).getFileName()).toUri().toURL();
+                    modInfos[i].jarURL = new URL("file:package/" + Paths.get(oldURL.toURI()).getFileName().toString());
                 } catch (MalformedURLException | URISyntaxException e) {
                     e.printStackTrace();
                 }
-                String json = gson.toJson(Loader.MODINFOS[i]);
-                Loader.MODINFOS[i].jarURL = oldURL;
+                String json = gson.toJson(modInfos[i]);
+                modInfos[i].jarURL = oldURL;
                 src.append("ret[").append(i).append("] = gson.fromJson(").append("\"").append(json.replaceAll("\"", "\\\\\"")).append("\", ")
                     .append(ModInfo.class.getName()).append(".class);\n");
                 src.append("adjustJarURL(ret[").append(i).append("]);\n");
@@ -325,11 +325,11 @@ class PackageJar
         return tokens[0] + "-modded." + tokens[1];
     }
 
-    private static String createClassPath()
+    private static String createClassPath(ModInfo[] modInfos)
     {
         StringBuilder sb = new StringBuilder();
 
-        for (ModInfo info : Loader.MODINFOS) {
+        for (ModInfo info : modInfos) {
             try {
                 String filename = Paths.get(info.jarURL.toURI()).getFileName().toString();
                 sb.append("package/")
@@ -343,10 +343,14 @@ class PackageJar
         return sb.toString();
     }
 
-    public static void packageJar(MTSClassPool pool, String jarPath)
+    public static void packageJar(PatchSession session, String jarPath)
         throws SecurityException, IllegalArgumentException, IOException, URISyntaxException
     {
-        CtClass ctPrePackagedLauncher = setupPrepackagedLauncher(pool);
+        MTSClassPool pool = (MTSClassPool) session.getPool();
+        ModInfo[] modInfos = session.getModInfos();
+        File gameJar = new File(session.getGameJar());
+        URL gameJarURL = gameJar.toURI().toURL();
+        CtClass ctPrePackagedLauncher = setupPrepackagedLauncher(session);
 
         File outFile = new File(jarPath);
 
@@ -355,7 +359,7 @@ class PackageJar
             Attributes attributes = manifest.getMainAttributes();
             attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
             attributes.put(Attributes.Name.MAIN_CLASS, PrepackagedLauncher.class.getName());
-            attributes.put(Attributes.Name.CLASS_PATH, createClassPath());
+            attributes.put(Attributes.Name.CLASS_PATH, createClassPath(modInfos));
             attributes.put(new Attributes.Name("Created-By"), "ModTheSpire");
             JarOutputStream outJar = new JarOutputStream(new FileOutputStream(outFile), manifest);
             Entries entries = new Entries();
@@ -401,6 +405,10 @@ class PackageJar
                     String className = ctClass.getName();
                     byte[] b = ctClass.toBytecode();
                     String classPath = className.replaceAll("\\.", "/") + ".class";
+                    // Classes from the base game go in the modded jar itself
+                    if (gameJarURL.equals(locationURL)) {
+                        locationURL = null;
+                    }
                     entries.add(new Entry(classPath, b, locationURL));
                 } catch (IOException | CannotCompileException e) {
                     // eat it - just means this isn't a file we've loaded
@@ -409,7 +417,7 @@ class PackageJar
             // Find core patches
             findCorePatchEntries(entries, Loader.class.getResourceAsStream(Loader.COREPATCHES_JAR));
             // Find mods
-            for (ModInfo modInfo : Loader.MODINFOS) {
+            for (ModInfo modInfo : modInfos) {
                 try {
                     findModEntries(entries, new File(modInfo.jarURL.toURI()), modInfo.ID);
                 } catch (URISyntaxException e) {
@@ -417,7 +425,7 @@ class PackageJar
                 }
             }
             // Find base game
-            findModEntries(entries, new File(Loader.STS_JAR), null);
+            findModEntries(entries, gameJar, null);
 
             System.out.println("  " + entries.size() + " entries");
 
@@ -450,13 +458,13 @@ class PackageJar
             copyJarContents(outJar, entries, Loader.class.getResourceAsStream(Loader.COREPATCHES_JAR), null, Entry.Type.COREPATCH);
             // Copy base game
             System.out.println("  Copying base game entries...");
-            copyJarContents(outJar, entries, new File(Loader.STS_JAR), null);
+            copyJarContents(outJar, entries, gameJar, null);
 
             outJar.close();
 
             // Do mod jars
             new File("package").mkdirs();
-            for (ModInfo modInfo : Loader.MODINFOS) {
+            for (ModInfo modInfo : modInfos) {
                 String filename = Paths.get(modInfo.jarURL.toURI()).getFileName().toString();
                 outJar = new JarOutputStream(new FileOutputStream(Paths.get("package", createModdedJarName(filename)).toFile()));
                 System.out.println("  Copying " + modInfo.ID + "...");
@@ -522,7 +530,9 @@ class PackageJar
             urls.add(0, PrepackagedLauncher.class.getProtectionDomain().getCodeSource().getLocation());
             URL[] arr = urls.toArray(urls.toArray(new URL[0]));
 
-            Patcher.bustEnums(PrepackagedLauncher.class.getClassLoader(), arr);
+            PatchSession session = new PatchSession(Loader.MODINFOS, ClassPool.getDefault(), Loader.STS_VERSION);
+            session.setGameJar(Loader.STS_JAR);
+            Patcher.bustEnums(session, PrepackagedLauncher.class.getClassLoader(), arr);
         }
 
         private static void callInitializers()
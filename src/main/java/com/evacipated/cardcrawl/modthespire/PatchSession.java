@@ -0,0 +1,160 @@
+package com.evacipated.cardcrawl.modthespire;
+
+import com.evacipated.cardcrawl.modthespire.patcher.PatchContext;
+import com.evacipated.cardcrawl.modthespire.patcher.PatchInfo;
+import com.evacipated.cardcrawl.modthespire.patcher.PatchInfoComparator;
+import com.evacipated.cardcrawl.modthespire.patcher.PatchTimingReport;
+import javassist.ClassPool;
+import org.scannotation.AnnotationDB;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Everything one run of the patcher reads and builds up, from finding patches to busting enums.
+// Nothing is shared between sessions, so patching can be run more than once in the same JVM
+public class PatchSession
+{
+    // The session the public API (LineFinder) works against on each thread
+    private static final ThreadLocal<PatchSession> active = new ThreadLocal<>();
+
+    private ModInfo[] modInfos;
+    private ModRegistry registry;
+    private final ClassPool pool;
+    private final String stsVersion;
+    private String gameJar = null;
+    private SwitchMapIndex switchMapIndex = null;
+    private MTSClassLoader patchingLoader = null;
+
+    final Map<URL, AnnotationDB> annotationDBMap = new LinkedHashMap<>();
+    final Map<Class<?>, EnumBusterReflect> enumBusterMap = new HashMap<>();
+    // Enum class name -> values added by @SpireEnum, in the order they were found
+    final Map<String, Set<String>> newEnumValues = new LinkedHashMap<>();
+    // Enums extended by rewriting their bytecode, these don't need busting
+    final Set<String> extendedEnums = new HashSet<>();
+    final TreeSet<PatchInfo> patchInfos = new TreeSet<>(new PatchInfoComparator());
+    final PatchContext context = new PatchContext();
+    final PatchTimingReport timings = new PatchTimingReport(false);
+
+    public PatchSession(ModInfo[] modInfos, ClassPool pool, String stsVersion)
+    {
+        this.modInfos = modInfos;
+        this.registry = new ModRegistry(modInfos);
+        this.pool = pool;
+        this.stsVersion = stsVersion;
+    }
+
+    public static PatchSession active()
+    {
+        return active.get();
+    }
+
+    public void activate()
+    {
+        active.set(this);
+    }
+
+    public ModInfo[] getModInfos()
+    {
+        return modInfos;
+    }
+
+    void setModInfos(ModInfo[] modInfos)
+    {
+        this.modInfos = modInfos;
+        this.registry = new ModRegistry(modInfos);
+    }
+
+    public ClassPool getPool()
+    {
+        return pool;
+    }
+
+    public String getSTSVersion()
+    {
+        return stsVersion;
+    }
+
+    public Map<URL, AnnotationDB> getAnnotationDBMap()
+    {
+        return annotationDBMap;
+    }
+
+    public PatchTimingReport getTimings()
+    {
+        return timings;
+    }
+
+    public String getGameJar()
+    {
+        return gameJar;
+    }
+
+    public void setGameJar(String gameJar)
+    {
+        this.gameJar = gameJar;
+        switchMapIndex = null;
+    }
+
+    // Read the first time an enum is busted
+    SwitchMapIndex getSwitchMapIndex() throws IOException
+    {
+        if (switchMapIndex == null) {
+            switchMapIndex = SwitchMapIndex.load(new File(gameJar));
+        }
+        return switchMapIndex;
+    }
+
+    // ID of the mod a jar belongs to, core patches count as ModTheSpire
+    String modID(URL jarURL)
+    {
+        ModInfo info = registry.getMod(jarURL);
+        return info != null ? info.ID : "ModTheSpire";
+    }
+
+    public PatchContext getContext()
+    {
+        return context;
+    }
+
+    public ClassHierarchy getHierarchy()
+    {
+        return context.getHierarchy();
+    }
+
+    // Locators and Instrument/Raw patches run before anything is patched, so the game classes they touch
+    // are loaded here instead of in the ClassLoader the patched classes go into.
+    // Only made the first time one of them is needed
+    public ClassLoader getPatchingLoader() throws IOException, IllegalAccessException
+    {
+        if (patchingLoader == null) {
+            patchingLoader = new MTSClassLoader(InMemoryJar.bundled(Loader.COREPATCHES_JAR), Loader.buildUrlArray(modInfos), Loader.class.getClassLoader());
+        }
+        return patchingLoader;
+    }
+
+    // Patching outside a launch (tests) has no game jar or core patches to build one from
+    void setPatchingLoader(MTSClassLoader loader)
+    {
+        patchingLoader = loader;
+    }
+
+    public void closePatchingLoader() throws IOException
+    {
+        if (patchingLoader != null) {
+            patchingLoader.close();
+            patchingLoader = null;
+        }
+    }
+
+    public boolean isModLoaded(String modID)
+    {
+        return registry.isLoaded(modID);
+    }
+}
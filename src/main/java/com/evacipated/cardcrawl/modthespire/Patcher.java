@@ -3,6 +3,7 @@ package com.evacipated.cardcrawl.modthespire;
 import com.evacipated.cardcrawl.modthespire.lib.*;
 import com.evacipated.cardcrawl.modthespire.patcher.*;
 import com.evacipated.cardcrawl.modthespire.patcher.InsertPatchInfo.LineNumberAndPatchType;
+import com.evacipated.cardcrawl.modthespire.patcher.javassist.EnumValuesExtender;
 import com.evacipated.cardcrawl.modthespire.patcher.javassist.MyCodeConverter;
 import javassist.*;
 import javassist.bytecode.AnnotationsAttribute;
@@ -10,6 +11,9 @@ import javassist.bytecode.ConstPool;
 import javassist.bytecode.DuplicateMemberException;
 import javassist.bytecode.annotation.Annotation;
 import javassist.bytecode.annotation.AnnotationImpl;
+import javassist.bytecode.annotation.ArrayMemberValue;
+import javassist.bytecode.annotation.ClassMemberValue;
+import javassist.bytecode.annotation.MemberValue;
 import javassist.expr.ExprEditor;
 import javassist.expr.MethodCall;
 import org.scannotation.AnnotationDB;
@@ -21,49 +25,59 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.net.URL;
+import java.nio.file.Paths;
 import java.util.*;
 
 public class Patcher {
-    public static Map<URL, AnnotationDB> annotationDBMap = new HashMap<>();
-    private static Map<Class<?>, EnumBusterReflect> enumBusterMap = new HashMap<>();
-    private static TreeSet<PatchInfo> patchInfos = new TreeSet<>(new PatchInfoComparator());
+    // The annotation index of the launch's PatchSession, kept here for mods that read it.
+    // Set by the Loader, the patcher itself only uses the session's map
+    @Deprecated
+    public static Map<URL, AnnotationDB> annotationDBMap = new LinkedHashMap<>();
 
-    public static void initializeMods(ClassLoader loader, ModInfo... modInfos) throws ClassNotFoundException, InvocationTargetException, IllegalAccessException
+    public static void indexHierarchy(PatchSession session, URL[] jars, InMemoryJar... inMemory) throws IOException
     {
-        for (ModInfo info : modInfos) {
-            if (annotationDBMap.containsKey(info.jarURL)) {
-                Set<String> initializers = annotationDBMap.get(info.jarURL).getAnnotationIndex().get(SpireInitializer.class.getName());
-                if (initializers != null) {
-                    System.out.println(" - " + info.Name);
-                    for (String initializer : initializers) {
-                        System.out.println("   - " + initializer);
-                        try {
-                            long startTime = System.nanoTime();
-                            Method init = null;
-                            if (info.ID.startsWith("__sideload_")) {
-                                init = loader.loadClass(initializer).getDeclaredMethod("sideload");
-                            }
-                            if (init == null) {
-                                init = loader.loadClass(initializer).getDeclaredMethod("initialize");
-                            }
-                            init.invoke(null);
-                            long endTime = System.nanoTime();
-                            long duration = endTime - startTime;
-                            System.out.println("   - " + (duration / 1000000) + "ms");
-                        } catch (NoSuchMethodException e) {
-                            System.out.println("WARNING: Unable to find method initialize() on class marked @SpireInitializer: " + initializer);
-                        }
+        session.context.setHierarchy(ClassHierarchy.build(jars, inMemory));
+    }
+
+    public static void initializeMods(PatchSession session, ClassLoader loader) throws ClassNotFoundException, InvocationTargetException, IllegalAccessException
+    {
+        Map<URL, AnnotationDB> annotationDBMap = session.annotationDBMap;
+        InitializerRunner runner = new InitializerRunner(loader, session.timings);
+        try {
+            for (ModInfo info : session.getModInfos()) {
+                Set<String> initializers = null;
+                if (annotationDBMap.containsKey(info.jarURL)) {
+                    initializers = annotationDBMap.get(info.jarURL).getAnnotationIndex().get(SpireInitializer.class.getName());
+                    if (initializers != null) {
+                        System.out.println(" - " + info.Name);
                     }
+                } else {
+                    System.err.println(info.jarURL + " Not in DB map. Something is very wrong");
                 }
-            } else {
-                System.err.println(info.jarURL + " Not in DB map. Something is very wrong");
+                runner.initialize(info, initializers != null ? initializers : Collections.emptySet());
             }
+            runner.finish();
+        } finally {
+            runner.shutdown();
+        }
+    }
+
+    public static void reportTimings(PatchSession session)
+    {
+        session.timings.printReport(System.out, 20);
+        try {
+            session.timings.write(Paths.get(PatchTimingReport.REPORT_FILE));
+        } catch (IOException e) {
+            System.out.println("Failed to write " + PatchTimingReport.REPORT_FILE + ": " + e);
         }
     }
 
-    public static ModInfo[] sideloadMods(MTSClassLoader tmpPatchingLoader, MTSClassLoader loader, ClassPool pool, ModInfo[] allModInfos, ModInfo[] modInfos)
+    public static ModInfo[] sideloadMods(PatchSession session, MTSClassLoader loader, ModInfo[] allModInfos)
         throws IOException, NotFoundException, ClassNotFoundException
     {
+        ClassPool pool = session.getPool();
+        Map<URL, AnnotationDB> annotationDBMap = session.annotationDBMap;
+        ModInfo[] modInfos = session.getModInfos();
         List<String> sideloadList = new ArrayList<>();
         for (ModInfo modInfo : modInfos) {
             if (modInfo.MTS_Version.compareTo(Loader.MTS_VERSION) <= 0) {
@@ -92,7 +106,7 @@ public class Patcher {
             SpireSideload sideload = (SpireSideload) ctSideloadClass.getAnnotation(SpireSideload.class);
             if (sideload != null) {
                 for (String modid : sideload.modIDs()) {
-                    if (!Loader.isModLoaded(modid)) {
+                    if (!session.isModLoaded(modid)) {
                         System.out.print("Sideloading " + modid + "...");
                         ModInfo info = null;
                         for (ModInfo allInfo : allModInfos) {
@@ -104,12 +118,12 @@ public class Patcher {
                         if (info != null) {
                             // Add dummy value to modid TODO?
                             info.ID = "__sideload_" + info.ID;
-                            // Sideload mod into classloaders
-                            tmpPatchingLoader.addURL(info.jarURL);
+                            // Sideload mod into classloader
                             loader.addURL(info.jarURL);
                             // Sideload mod into MODINFOS
                             modInfos = Arrays.copyOf(modInfos, modInfos.length + 1);
                             modInfos[modInfos.length - 1] = info;
+                            session.setModInfos(modInfos);
                             System.out.println("Done.");
                         } else {
                             System.out.println("Not found.");
@@ -122,22 +136,23 @@ public class Patcher {
         return modInfos;
     }
 
-    public static List<Iterable<String>> findPatches(URL[] urls) throws IOException
+    public static List<Iterable<String>> findPatches(PatchSession session, URL[] urls) throws IOException
     {
-        return findPatches(urls, null);
+        return findPatches(session, urls, null);
     }
 
-    public static List<Iterable<String>> findPatches(ModInfo[] modInfos) throws IOException
+    public static List<Iterable<String>> findPatches(PatchSession session, ModInfo[] modInfos) throws IOException
     {
         URL[] urls = new URL[modInfos.length];
         for (int i = 0; i < modInfos.length; i++) {
             urls[i] = modInfos[i].jarURL;
         }
-        return findPatches(urls, modInfos);
+        return findPatches(session, urls, modInfos);
     }
 
-    public static List<Iterable<String>> findPatches(URL[] urls, ModInfo[] modInfos) throws IOException
+    public static List<Iterable<String>> findPatches(PatchSession session, URL[] urls, ModInfo[] modInfos) throws IOException
     {
+        Map<URL, AnnotationDB> annotationDBMap = session.annotationDBMap;
         List<Iterable<String>> patchSetList = new ArrayList<>();
         for (int i = 0; i < urls.length; ++i) {
             if (modInfos == null || modInfos[i].MTS_Version.compareTo(Loader.MTS_VERSION) <= 0) {
@@ -149,7 +164,7 @@ public class Patcher {
                     annotationDBMap.put(urls[i], db);
                 }
                 db.scanArchives(urls[i]);
-                Set<String> set = new HashSet<>();
+                Set<String> set = new ModPatchSet(modInfos == null ? "ModTheSpire" : modInfos[i].ID);
                 Set<String> it = db.getAnnotationIndex().get(SpirePatch.class.getName());
                 if (it != null) {
                     set.addAll(it);
@@ -176,19 +191,31 @@ public class Patcher {
         return patchSetList;
     }
 
-    public static void patchEnums(ClassLoader loader, ClassPool pool, ModInfo[] modInfos)
+    // Patch class names found in a single mod, tagged with that mod's ID
+    private static class ModPatchSet extends HashSet<String>
+    {
+        final String modID;
+
+        ModPatchSet(String modID)
+        {
+            this.modID = modID;
+        }
+    }
+
+    public static void patchEnums(PatchSession session, ModInfo[] modInfos)
         throws IOException, ClassNotFoundException, NotFoundException, CannotCompileException
     {
         URL[] urls = new URL[modInfos.length];
         for (int i = 0; i < modInfos.length; i++) {
             urls[i] = modInfos[i].jarURL;
         }
-        patchEnums(loader, pool, urls);
+        patchEnums(session, urls);
     }
 
-    public static void patchEnums(ClassLoader loader, ClassPool pool, URL... urls)
+    public static void patchEnums(PatchSession session, URL... urls)
         throws IOException, ClassNotFoundException, NotFoundException, CannotCompileException
     {
+        ClassPool pool = session.getPool();
         AnnotationDB db = new AnnotationDB();
         db.setScanClassAnnotations(false);
         db.setScanMethodAnnotations(false);
@@ -218,16 +245,20 @@ public class Patcher {
                         f.setModifiers(Modifier.PUBLIC | Modifier.STATIC | Modifier.FINAL | Modifier.ENUM);
                         ConstPool constPool = ctClass.getClassFile().getConstPool();
                         AnnotationsAttribute attr = new AnnotationsAttribute(constPool, AnnotationsAttribute.visibleTag);
-                        for (Object a : field.getAvailableAnnotations()) {
-                            if (Proxy.getInvocationHandler(a) instanceof AnnotationImpl) {
-                                AnnotationImpl impl = (AnnotationImpl) Proxy.getInvocationHandler(a);
-                                if (impl.getTypeName().equals(SpireEnum.class.getName())) {
+                        // Copied from the class file, so the annotation types aren't loaded
+                        for (String tag : new String[]{AnnotationsAttribute.visibleTag, AnnotationsAttribute.invisibleTag}) {
+                            AnnotationsAttribute fieldAttr = (AnnotationsAttribute) field.getFieldInfo2().getAttribute(tag);
+                            if (fieldAttr == null) {
+                                continue;
+                            }
+                            for (Annotation a : fieldAttr.getAnnotations()) {
+                                if (a.getTypeName().equals(SpireEnum.class.getName())) {
                                     continue;
                                 }
-                                Annotation annotation = new Annotation(impl.getTypeName(), constPool);
-                                if (impl.getAnnotation().getMemberNames() != null) {
-                                    for (Object memberName : impl.getAnnotation().getMemberNames()) {
-                                        annotation.addMemberValue((String) memberName, impl.getAnnotation().getMemberValue((String) memberName));
+                                Annotation annotation = new Annotation(a.getTypeName(), constPool);
+                                if (a.getMemberNames() != null) {
+                                    for (Object memberName : a.getMemberNames()) {
+                                        annotation.addMemberValue((String) memberName, a.getMemberValue((String) memberName));
                                     }
                                 }
                                 attr.addAnnotation(annotation);
@@ -235,6 +266,7 @@ public class Patcher {
                         }
                         f.getFieldInfo().addAttribute(attr);
                         ctClass.addField(f);
+                        session.newEnumValues.computeIfAbsent(ctClass.getName(), k -> new LinkedHashSet<>()).add(enumName);
                     } catch (DuplicateMemberException ignore) {
                         // Field already exists
                         if (!Loader.DEBUG && !hasPrintedWarning) {
@@ -248,17 +280,36 @@ public class Patcher {
         }
     }
 
-    public static void bustEnums(ClassLoader loader, ModInfo[] modInfos)
+    // With bytecode enums turned on for the session, creates the values added by patchEnums in each enum's static initializer.
+    // Enums that can't be extended that way are left to bustEnums
+    public static void extendEnums(PatchSession session) throws NotFoundException, CannotCompileException
+    {
+        if (!session.context.isBytecodeEnums()) {
+            return;
+        }
+
+        for (Map.Entry<String, Set<String>> entry : session.newEnumValues.entrySet()) {
+            CtClass ctEnum = session.getPool().get(entry.getKey());
+            if (EnumValuesExtender.canExtend(ctEnum)) {
+                EnumValuesExtender.extend(ctEnum, entry.getValue());
+                session.extendedEnums.add(entry.getKey());
+            } else if (Loader.DEBUG) {
+                System.out.println("Can't extend " + entry.getKey() + " in bytecode, busting instead");
+            }
+        }
+    }
+
+    public static void bustEnums(PatchSession session, ClassLoader loader, ModInfo[] modInfos)
         throws IOException, ClassNotFoundException, NoSuchFieldException, IllegalAccessException
     {
         URL[] urls = new URL[modInfos.length];
         for (int i = 0; i < modInfos.length; i++) {
             urls[i] = modInfos[i].jarURL;
         }
-        bustEnums(loader, urls);
+        bustEnums(session, loader, urls);
     }
 
-    public static void bustEnums(ClassLoader loader, URL... urls)
+    public static void bustEnums(PatchSession session, ClassLoader loader, URL... urls)
         throws IOException, ClassNotFoundException, NoSuchFieldException, IllegalAccessException
     {
         AnnotationDB db = new AnnotationDB();
@@ -271,51 +322,95 @@ public class Patcher {
             return;
         }
 
+        // Collect every new value first, so each enum's values and switch maps are only grown once
+        Map<Class<?>, List<Field>> enumFields = new LinkedHashMap<>();
         for (String s : annotations) {
             Class<?> cls = loader.loadClass(s);
             for (Field field : cls.getDeclaredFields()) {
-                SpireEnum spireEnum = field.getDeclaredAnnotation(SpireEnum.class);
-                if (spireEnum != null) {
-                    String enumName = field.getName();
-                    if (!spireEnum.name().isEmpty()) {
-                        enumName = spireEnum.name();
-                    }
-
-                    EnumBusterReflect buster;
-                    if (enumBusterMap.containsKey(field.getType())) {
-                        buster = enumBusterMap.get(field.getType());
-                    } else {
-                        buster = new EnumBusterReflect(loader, field.getType());
-                        enumBusterMap.put(field.getType(), buster);
-                    }
-                    Enum<?> enumValue = buster.make(enumName);
-                    buster.addByValue(enumValue);
-                    try {
-                        Field constantField = field.getType().getField(enumName);
-                        ReflectionHelper.setStaticFinalField(constantField, enumValue);
-                    } catch (NoSuchFieldException ignored) {
-                    }
+                if (field.getDeclaredAnnotation(SpireEnum.class) != null) {
+                    enumFields.computeIfAbsent(field.getType(), k -> new ArrayList<>()).add(field);
+                }
+            }
+        }
 
+        for (Map.Entry<Class<?>, List<Field>> entry : enumFields.entrySet()) {
+            Class<?> enumType = entry.getKey();
+            if (session.extendedEnums.contains(enumType.getName())) {
+                // Values already exist, just point the @SpireEnum fields at them
+                for (Field field : entry.getValue()) {
                     field.setAccessible(true);
-                    field.set(null, enumValue);
+                    field.set(null, enumType.getField(spireEnumName(field)).get(null));
+                }
+                continue;
+            }
+
+            EnumBusterReflect buster = session.enumBusterMap.get(enumType);
+            if (buster == null) {
+                buster = new EnumBusterReflect(loader, enumType, false, session.getSwitchMapIndex());
+                session.enumBusterMap.put(enumType, buster);
+            }
+
+            List<Enum<?>> enumValues = new ArrayList<>();
+            for (Field field : entry.getValue()) {
+                enumValues.add(buster.make(spireEnumName(field)));
+            }
+            buster.addAllByValue(enumValues);
+
+            for (int i = 0; i < enumValues.size(); ++i) {
+                Field field = entry.getValue().get(i);
+                Enum<?> enumValue = enumValues.get(i);
+                try {
+                    Field constantField = enumType.getField(spireEnumName(field));
+                    ReflectionHelper.setStaticFinalField(constantField, enumValue);
+                } catch (NoSuchFieldException ignored) {
                 }
+
+                field.setAccessible(true);
+                field.set(null, enumValue);
             }
         }
     }
 
-    public static void finalizePatches(ClassLoader loader) throws Exception
+    private static String spireEnumName(Field field)
+    {
+        SpireEnum spireEnum = field.getDeclaredAnnotation(SpireEnum.class);
+        if (!spireEnum.name().isEmpty()) {
+            return spireEnum.name();
+        }
+        return field.getName();
+    }
+
+    public static void finalizePatches(PatchSession session) throws Exception
     {
         System.out.printf("Injecting patches...");
         if (Loader.DEBUG) {
             System.out.println();
             System.out.println();
         }
-        for (PatchInfo p : patchInfos) {
+        PatchSizeReport sizeReport = new PatchSizeReport();
+        Collection<PatchInfo> toApply = session.patchInfos;
+        if (session.context.uses(Rewrite.BATCHED_INSTRUMENTS)) {
+            toApply = BatchedInstrumentPatchInfo.batch(toApply);
+        }
+        if (session.context.uses(Rewrite.OUTLINING)) {
+            toApply = OutlinedPatchInfo.group(toApply);
+        }
+        for (PatchInfo p : toApply) {
             if (Loader.DEBUG) {
                 p.debugPrint();
             }
             try {
+                sizeReport.before(p);
+                long start = session.timings.start();
                 p.doPatch();
+                session.timings.patched(p, start);
+                // Patches can rewrite the method's code in place, which the index can't always notice
+                if (p.methodToPatch() != null) {
+                    session.context.invalidateExprIndex(p.methodToPatch());
+                } else {
+                    session.context.clearExprIndexes();
+                }
+                sizeReport.after(p);
             } catch (Exception e) {
                 if (!Loader.DEBUG) {
                     System.out.println();
@@ -327,12 +422,25 @@ public class Patcher {
                 System.out.println();
             }
         }
-        patchInfos.clear();
+        session.patchInfos.clear();
+        session.context.clearExprIndexes();
         System.out.println("Done.");
+        session.context.printReport(System.out);
+        boolean writeSizes = session.context.isPatchSizes() || Loader.DEBUG;
+        sizeReport.printReport(System.out, Loader.DEBUG, writeSizes);
+        if (writeSizes) {
+            try {
+                sizeReport.write(Paths.get(PatchSizeReport.REPORT_FILE));
+            } catch (IOException e) {
+                System.out.println("Failed to write " + PatchSizeReport.REPORT_FILE + ": " + e);
+            }
+        }
     }
 
-    public static ClassPath compilePatches(MTSClassLoader loader, MTSClassPool pool) throws CannotCompileException
+    public static ClassPath compilePatches(PatchSession session, MTSClassLoader loader) throws CannotCompileException, PatchingException
     {
+        MTSClassPool pool = (MTSClassPool) session.getPool();
+        ClassHierarchy hierarchy = session.getHierarchy();
         System.out.printf("Compiling patched classes...");
         if (Loader.DEBUG) {
             System.out.println();
@@ -340,7 +448,21 @@ public class Patcher {
 
         SortedMap<String, CtClass> ctClasses = new TreeMap<>();
         for (CtClass cls : pool.getModifiedClasses()) {
-            ctClasses.put(countSuperClasses(cls) + cls.getName(), cls);
+            ctClasses.put(countSuperClasses(hierarchy, cls) + cls.getName(), cls);
+        }
+
+        if (session.context.isVerifyPatches()) {
+            List<String> errors = new ArrayList<>();
+            for (CtClass cls : ctClasses.values()) {
+                errors.addAll(PatchVerifier.verify(cls));
+            }
+            if (!errors.isEmpty()) {
+                System.out.println();
+                for (String error : errors) {
+                    System.out.println("ERROR: " + error);
+                }
+                throw new PatchingException(errors.size() + " patched method(s) failed verification");
+            }
         }
 
         ByteArrayMapClassPath cp = new ByteArrayMapClassPath();
@@ -348,7 +470,9 @@ public class Patcher {
             if (Loader.DEBUG) {
                 System.out.println("  " + cls.getValue().getName());
             }
+            long start = session.timings.start();
             cls.getValue().toClass(loader, null);
+            session.timings.compiled(cls.getValue().getName(), start);
             loader.registerPackage(cls.getValue()); //register missing package information
             cp.addClass(cls.getValue());
             cls.getValue().detach();
@@ -360,9 +484,18 @@ public class Patcher {
         return cp;
     }
 
-    private static int countSuperClasses(CtClass cls)
+    private static int countSuperClasses(ClassHierarchy hierarchy, CtClass cls)
     {
         String name = cls.getName();
+        // Only trust the index if no patch has changed the class's superclass
+        if (hierarchy != null && Objects.equals(cls.getClassFile2().getSuperclass(), hierarchy.getSuperclass(name))) {
+            int depth = hierarchy.getDepth(name);
+            if (depth >= 0) {
+                // getSuperclass() is also counted once for java.lang.Object
+                return depth + 1;
+            }
+        }
+
         int count = 0;
 
         while (cls != null) {
@@ -377,19 +510,25 @@ public class Patcher {
         return count;
     }
 
-    public static void injectPatches(ClassLoader loader, ClassPool pool, List<Iterable<String>> class_names) throws Exception
+    public static void injectPatches(PatchSession session, List<Iterable<String>> class_names) throws Exception
     {
         for (Iterable<String> it : class_names) {
-            injectPatches(loader, pool, it);
-            PatchInfo.nextMod();
+            session.context.setModID(it instanceof ModPatchSet ? ((ModPatchSet) it).modID : null);
+            injectPatches(session, it);
+            session.context.nextMod();
         }
+        session.context.setModID(null);
     }
 
-    public static void injectPatches(ClassLoader loader, ClassPool pool, Iterable<String> class_names) throws Exception
+    // Patch classes are only read as CtClasses, they're loaded (into the session's patching loader)
+    // only when a Locator has to run or an Instrument/Raw patch needs its method
+    public static void injectPatches(PatchSession session, Iterable<String> class_names) throws Exception
     {
         if (class_names == null)
             return;
 
+        ClassPool pool = session.getPool();
+
         for (String cls_name : class_names) {
             CtClass ctPatchClass = pool.get(cls_name);
             if (!Modifier.isPublic(ctPatchClass.getModifiers())) {
@@ -410,12 +549,12 @@ public class Patcher {
             SpirePatches2 patches2 = (SpirePatches2) ctPatchClass.getAnnotation(SpirePatches2.class);
             if (patches2 != null) {
                 Arrays.stream(patches2.value())
-                    .map(p2 -> convertSpirePatch2To1(loader, pool, p2))
+                    .map(p2 -> convertSpirePatch2To1(pool, p2))
                     .forEachOrdered(patchArr::add);
             } else {
                 SpirePatch2 patch2 = (SpirePatch2) ctPatchClass.getAnnotation(SpirePatch2.class);
                 if (patch2 != null) {
-                    patchArr.add(convertSpirePatch2To1(loader, pool, patch2));
+                    patchArr.add(convertSpirePatch2To1(pool, patch2));
                 }
             }
 
@@ -424,7 +563,7 @@ public class Patcher {
             while (iter.hasNext()) {
                 SpirePatch patch = iter.next();
                 String modId = patch.requiredModId();
-                if (!modId.isEmpty() && Arrays.stream(Loader.MODINFOS).noneMatch(x -> modId.equals(x.ID))) {
+                if (!modId.isEmpty() && !session.isModLoaded(modId)) {
                     iter.remove();
                 }
             }
@@ -432,8 +571,9 @@ public class Patcher {
             for (SpirePatch patch : patchArr) {
                 CtClass ctClsToPatch = null;
                 try {
-                    if (!patch.clz().equals(void.class)) {
-                        ctClsToPatch = pool.get(patch.clz().getName());
+                    String clz = patchClz(patch);
+                    if (clz != null) {
+                        ctClsToPatch = pool.get(clz);
                     } else if (!patch.cls().isEmpty()) {
                         ctClsToPatch = pool.get(patch.cls());
                     }
@@ -470,7 +610,7 @@ public class Patcher {
                             ctMethodToPatch = ctClsToPatch.makeClassInitializer();
                         }
                     } else if (patch.method().equals(SpirePatch.CLASS)) {
-                        patchInfos.add(new ClassPatchInfo(ctClsToPatch, ctPatchClass));
+                        session.patchInfos.add(new ClassPatchInfo(ctClsToPatch, ctPatchClass).attach(session.context));
                     } else {
                         if (ctParamTypes == null) {
                             CtMethod[] methods = ctClsToPatch.getDeclaredMethods(patch.method());
@@ -512,8 +652,9 @@ public class Patcher {
                         SpireInsertPatch insertPatch = (SpireInsertPatch) m.getAnnotation(SpireInsertPatch.class);
 
                         LocatorInfo locatorInfo = null;
-                        if (insertPatch != null && !insertPatch.locator().equals(SpireInsertPatch.NONE.class)) {
-                            locatorInfo = new LocatorInfo(ctMethodToPatch, loader.loadClass(insertPatch.locator().getName()));
+                        String locator = insertPatch == null ? null : classMember(insertPatch, "locator")[0];
+                        if (locator != null && !locator.equals(SpireInsertPatch.NONE.class.getName())) {
+                            locatorInfo = new LocatorInfo(ctMethodToPatch, session.getPatchingLoader().loadClass(locator));
                         }
 
                         if (!isInsertPatchValid(insertPatch, locatorInfo)) {
@@ -551,11 +692,11 @@ public class Patcher {
 
                         p = new InsertPatchInfo(insertPatch, locs, ctMethodToPatch, m).setSpirePatch(patch);
                     } else if (m.getName().equals("Instrument") || m.hasAnnotation(SpireInstrumentPatch.class)) {
-                        p = new InstrumentPatchInfo(ctMethodToPatch, findInstrumentMethod(loader.loadClass(cls_name), m.getName())).setSpirePatch(patch);
+                        p = new InstrumentPatchInfo(ctMethodToPatch, findInstrumentMethod(session.getPatchingLoader().loadClass(cls_name), m.getName())).setSpirePatch(patch);
                     } else if (m.getName().equals("Replace")) {
                         p = new ReplacePatchInfo(ctMethodToPatch, m).setSpirePatch(patch);
                     } else if (m.getName().equals("Raw") || m.hasAnnotation(SpireRawPatch.class)) {
-                        p = new RawPatchInfo(ctMethodToPatch, findRawMethod(loader.loadClass(cls_name), m.getName())).setSpirePatch(patch);
+                        p = new RawPatchInfo(ctMethodToPatch, findRawMethod(session.getPatchingLoader().loadClass(cls_name), m.getName())).setSpirePatch(patch);
                     }
 
                     if (p != null) {
@@ -566,7 +707,7 @@ public class Patcher {
                             throw new NonStaticPatchMethodException(m);
                         }
 
-                        patchInfos.add(p);
+                        session.patchInfos.add(p.attach(session.context));
                     }
                 }
             }
@@ -597,15 +738,49 @@ public class Patcher {
 
     private static CtClass[] patchParamTypez(ClassPool pool, SpirePatch patch) throws NotFoundException
     {
-        if (patch.paramtypez().length == 1 && void.class.equals(patch.paramtypez()[0])) {
+        String[] names = patchParamtypez(patch);
+        if (names == null) {
             return null;
         }
+        return pool.get(names);
+    }
 
-        String[] names = new String[patch.paramtypez().length];
-        for (int i = 0; i < patch.paramtypez().length; ++i) {
-            names[i] = patch.paramtypez()[i].getName();
+    // clz and paramtypez are read as class names, calling them would load the game's classes unpatched
+
+    private static String patchClz(SpirePatch patch)
+    {
+        String name = classMember(patch, "clz")[0];
+        if (name == null || name.equals(void.class.getName())) {
+            return null;
         }
-        return pool.get(names);
+        return name;
+    }
+
+    private static String[] patchParamtypez(SpirePatch patch)
+    {
+        String[] names = classMember(patch, "paramtypez");
+        if (names.length == 1 && (names[0] == null || names[0].equals(void.class.getName()))) {
+            return null;
+        }
+        return names;
+    }
+
+    // Class names in a Class or Class[] annotation member, {null} if it's left as the default
+    private static String[] classMember(java.lang.annotation.Annotation annotation, String member)
+    {
+        AnnotationImpl impl = (AnnotationImpl) Proxy.getInvocationHandler(annotation);
+        MemberValue value = impl.getAnnotation().getMemberValue(member);
+        if (value instanceof ArrayMemberValue) {
+            MemberValue[] values = ((ArrayMemberValue) value).getValue();
+            String[] names = new String[values.length];
+            for (int i = 0; i < values.length; ++i) {
+                names[i] = ((ClassMemberValue) values[i]).getValue();
+            }
+            return names;
+        } else if (value instanceof ClassMemberValue) {
+            return new String[]{((ClassMemberValue) value).getValue()};
+        }
+        return new String[]{null};
     }
 
     private static Method findInstrumentMethod(Class<?> cls, String name) throws NoSuchMethodException
@@ -632,42 +807,49 @@ public class Patcher {
 
     private static String patchParamTypesString(SpirePatch patch)
     {
-        if (patch.paramtypez().length == 1 && void.class.equals(patch.paramtypez()[0])) {
+        String[] paramtypez = patchParamtypez(patch);
+        if (paramtypez == null) {
             String[] def = {"DEFAULT"};
             if (Arrays.equals(patch.paramtypes(), def))
                 return "";
 
             return String.join(", ", patch.paramtypes());
         } else {
-            String[] tmp = new String[patch.paramtypez().length];
-            for (int i=0; i<patch.paramtypez().length; ++i) {
-                tmp[i] = patch.paramtypez()[i].getName();
-            }
-            return String.join(", ", tmp);
+            return String.join(", ", paramtypez);
         }
     }
 
     private static String patchClassName(SpirePatch patch)
     {
-        if (patch.clz().equals(void.class)) {
+        String clz = patchClz(patch);
+        if (clz == null) {
             return patch.cls();
         } else {
-            return patch.clz().getName();
+            return clz;
         }
     }
 
-    static void patchOverrides(ClassLoader loader, ClassPool pool, ModInfo[] modInfos) throws PatchingException
+    static void patchOverrides(PatchSession session) throws PatchingException
     {
+        ClassPool pool = session.getPool();
         System.out.println("Patching Overrides...");
-        MyCodeConverter.reset();
 
-        for (AnnotationDB db : annotationDBMap.values()) {
-            Set<String> classNames = db.getAnnotationIndex().get(SpireOverride.class.getName());
+        // Every override's super method is redirected by a single converter per superclass,
+        // so each superclass is only instrumented once no matter how many overrides it has
+        Map<CtClass, MyCodeConverter> superConverters = new LinkedHashMap<>();
+        Set<CtMethod> redirected = new HashSet<>();
+        // Mods with overrides redirected through each superclass
+        Map<CtClass, Set<String>> superMods = new HashMap<>();
+
+        for (Map.Entry<URL, AnnotationDB> jar : session.annotationDBMap.entrySet()) {
+            Set<String> classNames = jar.getValue().getAnnotationIndex().get(SpireOverride.class.getName());
             if (classNames != null) {
+                String modID = session.modID(jar.getKey());
                 for (String className : classNames) {
                     if (Loader.DEBUG) {
                         System.out.println("Class: [" + className + "]");
                     }
+                    long start = session.timings.start();
                     try {
                         CtClass cc = pool.get(className);
 
@@ -680,12 +862,29 @@ public class Patcher {
 
                                 if (Loader.DEBUG) {
                                     System.out.println(" - Overriding [" + superMethod.getLongName() + "]");
-                                    System.out.println("      Fixing invocations in superclass " + superMethod.getDeclaringClass().getSimpleName() + "...");
                                 }
 
-                                MyCodeConverter codeConverter = new MyCodeConverter();
-                                codeConverter.redirectSpecialMethodCall(superMethod);
-                                superMethod.getDeclaringClass().instrument(codeConverter);
+                                CtClass superClass = superMethod.getDeclaringClass();
+                                if (!session.context.uses(Rewrite.SUPERCLASS_OVERRIDES)) {
+                                    // A converter and a pass over the superclass for every override
+                                    if (Loader.DEBUG) {
+                                        System.out.println("      Fixing invocations in superclass " + superClass.getSimpleName() + "...");
+                                    }
+                                    MyCodeConverter codeConverter = new MyCodeConverter(session.context.getRedirectedMethods());
+                                    codeConverter.redirectSpecialMethodCall(superMethod);
+                                    superClass.instrument(codeConverter);
+                                    session.timings.touched(superClass.getName(), modID);
+                                } else {
+                                    superMods.computeIfAbsent(superClass, k -> new LinkedHashSet<>()).add(modID);
+                                    if (redirected.add(superMethod)) {
+                                        MyCodeConverter codeConverter = superConverters.get(superClass);
+                                        if (codeConverter == null) {
+                                            codeConverter = new MyCodeConverter(session.context.getRedirectedMethods());
+                                            superConverters.put(superClass, codeConverter);
+                                        }
+                                        codeConverter.redirectSpecialMethodCall(superMethod);
+                                    }
+                                }
 
                                 if (Loader.DEBUG) {
                                     System.out.println("      Replacing SpireSuper calls...");
@@ -731,9 +930,28 @@ public class Patcher {
                     } catch (NotFoundException | CannotCompileException e) {
                         throw new RuntimeException(e);
                     }
+                    session.timings.record("override", modID, className, start);
+                    session.timings.touched(className, modID);
                 }
             }
         }
+
+        for (Map.Entry<CtClass, MyCodeConverter> entry : superConverters.entrySet()) {
+            if (Loader.DEBUG) {
+                System.out.println("Fixing invocations in superclass " + entry.getKey().getSimpleName() + "...");
+            }
+            long start = session.timings.start();
+            try {
+                entry.getKey().instrument(entry.getValue());
+            } catch (CannotCompileException e) {
+                throw new RuntimeException(e);
+            }
+            String mods = String.join("+", superMods.get(entry.getKey()));
+            session.timings.record("override", mods, entry.getKey().getName(), start);
+            for (String mod : superMods.get(entry.getKey())) {
+                session.timings.touched(entry.getKey().getName(), mod);
+            }
+        }
     }
 
     private static CtMethod findSuperMethod(CtMethod ctMethod) throws NotFoundException
@@ -774,10 +992,10 @@ public class Patcher {
         return "((" + typename + ") " + value + ")" + extra;
     }
 
-    private static SpirePatch convertSpirePatch2To1(ClassLoader loader, ClassPool pool, SpirePatch2 patch2)
+    private static SpirePatch convertSpirePatch2To1(ClassPool pool, SpirePatch2 patch2)
     {
         AnnotationImpl impl = (AnnotationImpl) Proxy.getInvocationHandler(patch2);
         Annotation a = impl.getAnnotation();
-        return (SpirePatch) AnnotationImpl.make(loader, SpirePatch.class, pool, a);
+        return (SpirePatch) AnnotationImpl.make(pool.getClassLoader(), SpirePatch.class, pool, a);
     }
 }
@@ -0,0 +1,132 @@
+package com.evacipated.cardcrawl.modthespire;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.regex.Pattern;
+
+// Which of the game's classes hold a switch map ($SwitchMap$<enum>) for each enum type.
+// Built by reading the game jar with ASM, then cached on disk keyed by the jar's hash,
+// so busting enums doesn't have to scan the game jar for every enum type
+public class SwitchMapIndex
+{
+    private static final String SWITCH_MAP_PREFIX = "$SwitchMap$";
+    // Switch maps live in the synthetic $1 classes javac generates
+    private static final Pattern SWITCH_CLASS = Pattern.compile("com\\.megacrit\\.cardcrawl\\..+\\$1");
+
+    // Switch map field name -> classes declaring it
+    private final Map<String, List<String>> switchMaps = new HashMap<>();
+
+    public static String switchMapName(Class<?> enumClass)
+    {
+        return SWITCH_MAP_PREFIX + enumClass.getName().replace('.', '$');
+    }
+
+    public List<String> getClassesWithSwitchMap(Class<?> enumClass)
+    {
+        List<String> classes = switchMaps.get(switchMapName(enumClass));
+        return classes == null ? Collections.emptyList() : Collections.unmodifiableList(classes);
+    }
+
+    static SwitchMapIndex load(File jar) throws IOException
+    {
+        String hash = JarHash.of(jar);
+        Path cacheFile = Paths.get(System.getProperty("java.io.tmpdir"), "ModTheSpire", "switchmaps-" + hash + ".txt");
+
+        if (Files.isRegularFile(cacheFile)) {
+            try {
+                return read(cacheFile);
+            } catch (IOException e) {
+                System.out.println("Failed to read switch map cache, rebuilding: " + e);
+            }
+        }
+
+        SwitchMapIndex index = build(jar);
+        try {
+            index.write(cacheFile);
+        } catch (IOException e) {
+            System.out.println("Failed to write switch map cache: " + e);
+        }
+        return index;
+    }
+
+    private static SwitchMapIndex build(File jar) throws IOException
+    {
+        SwitchMapIndex index = new SwitchMapIndex();
+        try (JarInputStream is = new JarInputStream(new FileInputStream(jar))) {
+            JarEntry entry;
+            while ((entry = is.getNextJarEntry()) != null) {
+                if (!entry.getName().endsWith(".class")) {
+                    continue;
+                }
+                String className = entry.getName().substring(0, entry.getName().length() - ".class".length()).replace('/', '.');
+                if (!SWITCH_CLASS.matcher(className).find()) {
+                    continue;
+                }
+
+                ClassReader reader = new ClassReader(is);
+                if ((reader.getAccess() & (Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT)) != 0) {
+                    continue;
+                }
+                String declaringClass = reader.getClassName().replace('/', '.');
+                reader.accept(new ClassVisitor(Opcodes.ASM5)
+                {
+                    @Override
+                    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value)
+                    {
+                        if (name.startsWith(SWITCH_MAP_PREFIX)) {
+                            index.switchMaps.computeIfAbsent(name, k -> new ArrayList<>()).add(declaringClass);
+                        }
+                        return null;
+                    }
+                }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            }
+        }
+        return index;
+    }
+
+    // One "field class" pair per line
+    private static SwitchMapIndex read(Path file) throws IOException
+    {
+        SwitchMapIndex index = new SwitchMapIndex();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int space = line.indexOf(' ');
+            if (space < 0) {
+                throw new IOException("Malformed line: " + line);
+            }
+            index.switchMaps.computeIfAbsent(line.substring(0, space), k -> new ArrayList<>()).add(line.substring(space + 1));
+        }
+        return index;
+    }
+
+    private void write(Path file) throws IOException
+    {
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), "switchmaps", ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, List<String>> entry : new TreeMap<>(switchMaps).entrySet()) {
+                for (String className : entry.getValue()) {
+                    out.write(entry.getKey());
+                    out.write(' ');
+                    out.write(className);
+                    out.newLine();
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
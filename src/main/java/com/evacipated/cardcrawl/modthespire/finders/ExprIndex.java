@@ -0,0 +1,350 @@
+package com.evacipated.cardcrawl.modthespire.finders;
+
+import com.evacipated.cardcrawl.modthespire.PatchSession;
+import com.evacipated.cardcrawl.modthespire.patcher.Expectation;
+import com.evacipated.cardcrawl.modthespire.patcher.Rewrite;
+
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.NotFoundException;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.MethodInfo;
+import javassist.expr.Cast;
+import javassist.expr.ConstructorCall;
+import javassist.expr.ExprEditor;
+import javassist.expr.FieldAccess;
+import javassist.expr.Handler;
+import javassist.expr.Instanceof;
+import javassist.expr.MethodCall;
+import javassist.expr.NewArray;
+import javassist.expr.NewExpr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// Flat list of every expression in a method, in bytecode order.
+// Built once per method and shared by every locator targeting it, instead of
+// each locator walking the method's bytecode again.
+// Expressions are also grouped by the Key the built-in Matchers compare on, so
+// an in-order search only visits positions that can match instead of every
+// expression in the method.
+// The index is rebuilt if the method's code has changed since it was built.
+// Indexes are kept in the PatchContext of the patching run, see PatchSession.active()
+public class ExprIndex {
+
+    private final CtBehavior behavior;
+    private final CodeAttribute codeAttribute;
+    private final byte[] code;
+    private final int codeLength;
+    private final List<Entry> entries;
+    private final Map<Key, int[]> positions;
+
+    private ExprIndex(CtBehavior behavior, CodeAttribute codeAttribute, List<Entry> entries) {
+        this.behavior = behavior;
+        this.codeAttribute = codeAttribute;
+        this.code = codeAttribute == null ? null : codeAttribute.getCode();
+        this.codeLength = codeAttribute == null ? 0 : codeAttribute.getCodeLength();
+        this.entries = Collections.unmodifiableList(entries);
+        this.positions = buildPositions(entries);
+    }
+
+    private static Map<Key, int[]> buildPositions(List<Entry> entries) {
+        Map<Key, List<Integer>> tmp = new HashMap<>();
+        for (int i = 0; i < entries.size(); ++i) {
+            tmp.computeIfAbsent(entries.get(i).getKey(), k -> new ArrayList<>()).add(i);
+        }
+
+        Map<Key, int[]> ret = new HashMap<>(tmp.size() * 2);
+        for (Map.Entry<Key, List<Integer>> e : tmp.entrySet()) {
+            List<Integer> list = e.getValue();
+            int[] arr = new int[list.size()];
+            for (int i = 0; i < arr.length; ++i) {
+                arr[i] = list.get(i);
+            }
+            ret.put(e.getKey(), arr);
+        }
+        return ret;
+    }
+
+    // Whether locators should match against the index at all, the active session can turn it off
+    public static boolean isEnabled() {
+        PatchSession session = PatchSession.active();
+        return session == null || session.getContext().uses(Rewrite.EXPR_INDEX);
+    }
+
+    // Outside of a patching run there's nothing to share the index with, so it isn't kept
+    public static ExprIndex of(CtBehavior ctBehavior) throws CannotCompileException {
+        PatchSession session = PatchSession.active();
+        if (session == null) {
+            return build(ctBehavior);
+        }
+        return session.getContext().getExprIndex(ctBehavior);
+    }
+
+    public static ExprIndex of(CtBehavior ctBehavior, Map<CtBehavior, ExprIndex> cache) throws CannotCompileException {
+        ExprIndex index = cache.get(ctBehavior);
+        if (index == null || !index.isValidFor(ctBehavior.getMethodInfo2())) {
+            index = build(ctBehavior);
+            cache.put(ctBehavior, index);
+        }
+        return index;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    // Position of the first expression after 'after' matching key, or -1 if there is none
+    public int next(Key key, int after) {
+        int[] arr = positions.get(key);
+        if (arr == null) {
+            return -1;
+        }
+        int i = Arrays.binarySearch(arr, after + 1);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return i < arr.length ? arr[i] : -1;
+    }
+
+    // Positions of every expression after 'after' matching key
+    public int[] allAfter(Key key, int after) {
+        int[] arr = positions.get(key);
+        if (arr == null) {
+            return new int[0];
+        }
+        int i = Arrays.binarySearch(arr, after + 1);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return Arrays.copyOfRange(arr, i, arr.length);
+    }
+
+    // The method's expressions as an ExprEditor sees them, for finders the index can't answer
+    public void walk(ExprEditor editor) throws CannotCompileException {
+        behavior.instrument(editor);
+    }
+
+    public int getLineNumber(int position) {
+        return entries.get(position).getLineNumber();
+    }
+
+    private boolean isValidFor(MethodInfo methodInfo) {
+        CodeAttribute current = methodInfo.getCodeAttribute();
+        if (current != codeAttribute) {
+            return false;
+        }
+        return current == null || (current.getCode() == code && current.getCodeLength() == codeLength);
+    }
+
+    private static ExprIndex build(CtBehavior ctBehavior) throws CannotCompileException {
+        Recorder recorder = new Recorder();
+        MethodInfo methodInfo = ctBehavior.getMethodInfo2();
+        // Walk the code directly rather than through instrument(),
+        // so that merely reading a method doesn't mark its class as modified
+        recorder.doit(ctBehavior.getDeclaringClass(), methodInfo);
+        return new ExprIndex(ctBehavior, methodInfo.getCodeAttribute(), recorder.entries);
+    }
+
+    // What the built-in Matchers compare on for each kind of expression:
+    //   method call, field access: owner and name
+    //   new expression, constructor call: owner
+    //   cast, instanceof, array creation: type
+    //   catch clause: type and whether it's a finally block
+    public static final class Key {
+
+        private final Expectation expectation;
+        private final String first;
+        private final String second;
+        private final boolean flag;
+        private final int hash;
+
+        private Key(Expectation expectation, String first, String second, boolean flag) {
+            this.expectation = expectation;
+            this.first = first;
+            this.second = second;
+            this.flag = flag;
+            this.hash = Objects.hash(expectation, first, second, flag);
+        }
+
+        public static Key of(Expectation expectation, String className, String name) {
+            return new Key(expectation, className, name, false);
+        }
+
+        public static Key of(Expectation expectation, String typeName) {
+            return new Key(expectation, typeName, null, false);
+        }
+
+        public static Key ofCatch(String typeName, boolean isFinally) {
+            return new Key(Expectation.CATCH_CLAUSE, typeName, null, isFinally);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash
+                && expectation == other.expectation
+                && flag == other.flag
+                && Objects.equals(first, other.first)
+                && Objects.equals(second, other.second);
+        }
+    }
+
+    public static final class Entry {
+
+        private final Expectation expectation;
+        private final String className;
+        private final String name;
+        private final String descriptor;
+        private final String typeName;
+        private final boolean isFinally;
+        private final int lineNumber;
+
+        Entry(Expectation expectation, String className, String name, String descriptor, String typeName, boolean isFinally, int lineNumber) {
+            this.expectation = expectation;
+            this.className = className;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.typeName = typeName;
+            this.isFinally = isFinally;
+            this.lineNumber = lineNumber;
+        }
+
+        public Expectation getExpectation() {
+            return expectation;
+        }
+
+        // Owning class of a method call, constructor call, field access or new expression
+        public String getClassName() {
+            return className;
+        }
+
+        // Method or field name
+        public String getName() {
+            return name;
+        }
+
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        // Type of a cast, instanceof, catch clause or array component.
+        // null if the type could not be found
+        public String getTypeName() {
+            return typeName;
+        }
+
+        public boolean isFinally() {
+            return isFinally;
+        }
+
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        Key getKey() {
+            switch (expectation) {
+                case METHOD_CALL:
+                case FIELD_ACCESS:
+                    return Key.of(expectation, className, name);
+                case NEW_EXPRESSION:
+                case CONSTRUCTOR_CALL:
+                    return Key.of(expectation, className);
+                case CATCH_CLAUSE:
+                    return Key.ofCatch(typeName, isFinally);
+                default:
+                    return Key.of(expectation, typeName);
+            }
+        }
+    }
+
+    private static class Recorder extends ExprEditor {
+
+        final List<Entry> entries = new ArrayList<>();
+
+        private static String typeName(CtClass ctClass) {
+            return ctClass == null ? null : ctClass.getName();
+        }
+
+        @Override
+        public void edit(Cast expr) {
+            String type;
+            try {
+                type = typeName(expr.getType());
+            } catch (NotFoundException e) {
+                type = null;
+            }
+            entries.add(new Entry(Expectation.TYPE_CAST, null, null, null, type, false, expr.getLineNumber()));
+        }
+
+        @Override
+        public void edit(ConstructorCall expr) {
+            entries.add(new Entry(Expectation.CONSTRUCTOR_CALL, expr.getClassName(), expr.getMethodName(), expr.getSignature(), null, false, expr.getLineNumber()));
+        }
+
+        @Override
+        public void edit(FieldAccess expr) {
+            entries.add(new Entry(Expectation.FIELD_ACCESS, expr.getClassName(), expr.getFieldName(), expr.getSignature(), null, false, expr.getLineNumber()));
+        }
+
+        @Override
+        public void edit(Handler expr) {
+            String type;
+            try {
+                type = typeName(expr.getType());
+            } catch (NotFoundException e) {
+                type = null;
+            }
+            entries.add(new Entry(Expectation.CATCH_CLAUSE, null, null, null, type, expr.isFinally(), expr.getLineNumber()));
+        }
+
+        @Override
+        public void edit(Instanceof expr) {
+            String type;
+            try {
+                type = typeName(expr.getType());
+            } catch (NotFoundException e) {
+                type = null;
+            }
+            entries.add(new Entry(Expectation.INSTANCEOF, null, null, null, type, false, expr.getLineNumber()));
+        }
+
+        @Override
+        public void edit(MethodCall expr) {
+            entries.add(new Entry(Expectation.METHOD_CALL, expr.getClassName(), expr.getMethodName(), expr.getSignature(), null, false, expr.getLineNumber()));
+        }
+
+        @Override
+        public void edit(NewArray expr) {
+            String type;
+            try {
+                type = typeName(expr.getComponentType());
+            } catch (NotFoundException e) {
+                type = null;
+            }
+            entries.add(new Entry(Expectation.ARRAY_CREATION, null, null, null, type, false, expr.getLineNumber()));
+        }
+
+        @Override
+        public void edit(NewExpr expr) {
+            entries.add(new Entry(Expectation.NEW_EXPRESSION, expr.getClassName(), null, expr.getSignature(), null, false, expr.getLineNumber()));
+        }
+    }
+}
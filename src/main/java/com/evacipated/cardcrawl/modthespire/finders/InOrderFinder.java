@@ -5,6 +5,7 @@ import java.util.List;
 import com.evacipated.cardcrawl.modthespire.lib.Matcher;
 import com.evacipated.cardcrawl.modthespire.patcher.Expectation;
 
+import javassist.CannotCompileException;
 import javassist.expr.Expr;
 
 public class InOrderFinder extends MatchFinderExprEditor {
@@ -59,6 +60,40 @@ public class InOrderFinder extends MatchFinderExprEditor {
         }
     }
 
+    // Same as walking every expression with doMatch, but jumps straight to the
+    // next position that can match each Matcher in turn
+    @Override
+    public void matchIndex(ExprIndex index) throws CannotCompileException {
+        if (!canUseIndex()) {
+            super.matchIndex(index);
+            return;
+        }
+        int pos = -1;
+        for (Matcher m : expectedMatches) {
+            pos = index.next(m.indexKey(), pos);
+            if (pos < 0) {
+                return;
+            }
+        }
+        int found = index.next(finalMatch.indexKey(), pos);
+        if (found >= 0) {
+            foundFinalMatch(index.getLineNumber(found));
+        }
+    }
+
+    @Override
+    public boolean canUseIndex() {
+        if (!finalMatch.canMatchIndexed()) {
+            return false;
+        }
+        for (Matcher m : expectedMatches) {
+            if (!m.canMatchIndexed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean didFindLocation() {
         return foundLocation;
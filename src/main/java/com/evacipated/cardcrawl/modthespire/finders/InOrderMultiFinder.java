@@ -6,6 +6,7 @@ import java.util.List;
 import com.evacipated.cardcrawl.modthespire.lib.Matcher;
 import com.evacipated.cardcrawl.modthespire.patcher.Expectation;
 
+import javassist.CannotCompileException;
 import javassist.expr.Expr;
 
 public class InOrderMultiFinder extends MatchFinderExprEditor {
@@ -59,6 +60,39 @@ public class InOrderMultiFinder extends MatchFinderExprEditor {
         }
     }
 
+    // Same as walking every expression with doMatch, but jumps straight to the
+    // next position that can match each Matcher in turn
+    @Override
+    public void matchIndex(ExprIndex index) throws CannotCompileException {
+        if (!canUseIndex()) {
+            super.matchIndex(index);
+            return;
+        }
+        int pos = -1;
+        for (Matcher m : expectedMatches) {
+            pos = index.next(m.indexKey(), pos);
+            if (pos < 0) {
+                return;
+            }
+        }
+        for (int found : index.allAfter(finalMatch.indexKey(), pos)) {
+            foundFinalMatch(index.getLineNumber(found));
+        }
+    }
+
+    @Override
+    public boolean canUseIndex() {
+        if (!finalMatch.canMatchIndexed()) {
+            return false;
+        }
+        for (Matcher m : expectedMatches) {
+            if (!m.canMatchIndexed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean didFindLocation() {
         return foundLocation;
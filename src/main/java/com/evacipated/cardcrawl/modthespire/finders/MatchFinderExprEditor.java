@@ -2,6 +2,7 @@ package com.evacipated.cardcrawl.modthespire.finders;
 
 import com.evacipated.cardcrawl.modthespire.patcher.Expectation;
 
+import javassist.CannotCompileException;
 import javassist.expr.Cast;
 import javassist.expr.ConstructorCall;
 import javassist.expr.Expr;
@@ -21,6 +22,16 @@ public abstract class MatchFinderExprEditor extends ExprEditor {
 
     public abstract int[] getFoundLocations();
 
+    // Whether this finder can run against a method's ExprIndex instead of instrumenting it
+    public boolean canUseIndex() {
+        return false;
+    }
+
+    // Finders that can't search the index get the method walked with doMatch as before
+    public void matchIndex(ExprIndex index) throws CannotCompileException {
+        index.walk(this);
+    }
+
     @Override
     public void edit(Cast expr) {
         doMatch(Expectation.TYPE_CAST, expr);
@@ -1,7 +1,9 @@
 package com.evacipated.cardcrawl.modthespire.lib;
 
+import com.evacipated.cardcrawl.modthespire.finders.ExprIndex;
 import com.evacipated.cardcrawl.modthespire.patcher.Expectation;
 
+import javassist.CtClass;
 import javassist.NotFoundException;
 import javassist.expr.Cast;
 import javassist.expr.ConstructorCall;
@@ -27,6 +29,19 @@ public abstract class Matcher {
 
     public abstract boolean match(Expr toMatch);
 
+    // Matchers that can work from a method's shared ExprIndex override these,
+    // letting the finders skip walking the method's bytecode.
+    // The built-in matchers only claim support for their exact class, since a
+    // subclass may have overridden match(Expr)
+    public boolean canMatchIndexed() {
+        return false;
+    }
+
+    // null when the index can't answer for this matcher, finders then walk the method with match(Expr)
+    public ExprIndex.Key indexKey() {
+        return null;
+    }
+
     public static class TypeCastMatcher extends Matcher {
 
         private String typeName;
@@ -51,6 +66,16 @@ public abstract class Matcher {
             return result;
         }
 
+        @Override
+        public boolean canMatchIndexed() {
+            return getClass() == TypeCastMatcher.class;
+        }
+
+        @Override
+        public ExprIndex.Key indexKey() {
+            return ExprIndex.Key.of(Expectation.TYPE_CAST, typeName);
+        }
+
     }
 
     public static class ConstructorCallMatcher extends Matcher {
@@ -88,6 +113,17 @@ public abstract class Matcher {
                     (!checkMethodName || expr.getMethodName().equals(methodName));
         }
 
+        @Override
+        public boolean canMatchIndexed() {
+            // Index only groups constructor calls by class
+            return getClass() == ConstructorCallMatcher.class && !checkMethodName;
+        }
+
+        @Override
+        public ExprIndex.Key indexKey() {
+            return ExprIndex.Key.of(Expectation.CONSTRUCTOR_CALL, className);
+        }
+
     }
 
     public static class FieldAccessMatcher extends Matcher {
@@ -112,6 +148,16 @@ public abstract class Matcher {
                     expr.getFieldName().equals(fieldName);
         }
 
+        @Override
+        public boolean canMatchIndexed() {
+            return getClass() == FieldAccessMatcher.class;
+        }
+
+        @Override
+        public ExprIndex.Key indexKey() {
+            return ExprIndex.Key.of(Expectation.FIELD_ACCESS, className, fieldName);
+        }
+
     }
 
     public static class CatchClauseMatcher extends Matcher {
@@ -136,7 +182,9 @@ public abstract class Matcher {
             boolean result = false;
 
             try {
-                result = expr.getType().getName().equals(exceptionType) &&
+                // Type is null for finally blocks
+                CtClass type = expr.getType();
+                result = type != null && type.getName().equals(exceptionType) &&
                         expr.isFinally() == isFinallyClause;
             } catch (NotFoundException e) {
                 // this is allowed to happen so eat it
@@ -145,6 +193,16 @@ public abstract class Matcher {
             return result;
         }
 
+        @Override
+        public boolean canMatchIndexed() {
+            return getClass() == CatchClauseMatcher.class;
+        }
+
+        @Override
+        public ExprIndex.Key indexKey() {
+            return ExprIndex.Key.ofCatch(exceptionType, isFinallyClause);
+        }
+
     }
 
     public static class InstanceOfMatcher extends Matcher {
@@ -175,6 +233,16 @@ public abstract class Matcher {
             return result;
         }
 
+        @Override
+        public boolean canMatchIndexed() {
+            return getClass() == InstanceOfMatcher.class;
+        }
+
+        @Override
+        public ExprIndex.Key indexKey() {
+            return ExprIndex.Key.of(Expectation.INSTANCEOF, comparedToType);
+        }
+
     }
 
     public static class MethodCallMatcher extends Matcher {
@@ -199,6 +267,16 @@ public abstract class Matcher {
                     expr.getMethodName().equals(methodName);
         }
 
+        @Override
+        public boolean canMatchIndexed() {
+            return getClass() == MethodCallMatcher.class;
+        }
+
+        @Override
+        public ExprIndex.Key indexKey() {
+            return ExprIndex.Key.of(Expectation.METHOD_CALL, className, methodName);
+        }
+
     }
 
     public static class NewArrayMatcher extends Matcher {
@@ -229,6 +307,16 @@ public abstract class Matcher {
             return result;
         }
 
+        @Override
+        public boolean canMatchIndexed() {
+            return getClass() == NewArrayMatcher.class;
+        }
+
+        @Override
+        public ExprIndex.Key indexKey() {
+            return ExprIndex.Key.of(Expectation.ARRAY_CREATION, className);
+        }
+
     }
 
     public static class NewExprMatcher extends Matcher {
@@ -251,6 +339,16 @@ public abstract class Matcher {
             return expr.getClassName().equals(className);
         }
 
+        @Override
+        public boolean canMatchIndexed() {
+            return getClass() == NewExprMatcher.class;
+        }
+
+        @Override
+        public ExprIndex.Key indexKey() {
+            return ExprIndex.Key.of(Expectation.NEW_EXPRESSION, className);
+        }
+
     }
 
 }
@@ -0,0 +1,174 @@
+package com.evacipated.cardcrawl.modthespire.lib;
+
+import java.io.PrintStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Backing storage for SpireFields using SpireFieldStorage.Strategy.SIDE_TABLE.
+// Keys are compared by identity and held weakly, so an entry disappears once
+// the instance it belongs to is collected.
+public class SpireFieldSideTable
+{
+    // Rough cost of one entry on a 64-bit JVM: map node + weak key + boxed reference overhead.
+    // The values themselves aren't counted, so the report is a lower bound
+    private static final int APPROX_ENTRY_BYTES = 80;
+    private static final Object NULL = new Object();
+    private static final Map<String, SpireFieldSideTable> tables = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final ConcurrentHashMap<Object, Object> map = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+    public SpireFieldSideTable(String name)
+    {
+        this.name = name;
+        tables.put(name, this);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public Object get(Object instance, SpireField<?> field)
+    {
+        Object value = map.get(new LookupKey(instance));
+        if (value != null) {
+            return value == NULL ? null : value;
+        }
+
+        value = field.getDefaultValue();
+        if (isImmutable(value)) {
+            // Nothing can be written through an immutable default,
+            // so there's no need to spend an entry on it
+            return value;
+        }
+        expunge();
+        Object prev = map.putIfAbsent(new WeakKey(instance, queue), value);
+        if (prev != null) {
+            return prev == NULL ? null : prev;
+        }
+        return value;
+    }
+
+    public void set(Object instance, Object value)
+    {
+        expunge();
+        map.put(new WeakKey(instance, queue), value == null ? NULL : value);
+    }
+
+    public int size()
+    {
+        expunge();
+        return map.size();
+    }
+
+    public long approximateBytes()
+    {
+        return (long) size() * APPROX_ENTRY_BYTES;
+    }
+
+    private void expunge()
+    {
+        Reference<?> ref;
+        while ((ref = queue.poll()) != null) {
+            map.remove(ref);
+        }
+    }
+
+    // Exact boxed types only, Number also covers AtomicInteger, LongAdder, BigDecimal subclasses...
+    private static boolean isImmutable(Object value)
+    {
+        if (value == null || value instanceof Enum) {
+            return true;
+        }
+        Class<?> cls = value.getClass();
+        return cls == Integer.class
+            || cls == Long.class
+            || cls == Short.class
+            || cls == Byte.class
+            || cls == Float.class
+            || cls == Double.class
+            || cls == Boolean.class
+            || cls == Character.class
+            || cls == String.class;
+    }
+
+    public static void printReport(PrintStream out)
+    {
+        List<SpireFieldSideTable> sorted = new ArrayList<>(tables.values());
+        if (sorted.isEmpty()) {
+            return;
+        }
+        sorted.sort(Comparator.comparing(SpireFieldSideTable::getName));
+
+        out.println("SpireField side tables:");
+        for (SpireFieldSideTable table : sorted) {
+            out.printf(" - %s: %d entries (~%dKB, not counting values)%n", table.getName(), table.size(), table.approximateBytes() / 1024);
+        }
+    }
+
+    private static final class WeakKey extends WeakReference<Object>
+    {
+        private final int hash;
+
+        WeakKey(Object referent, ReferenceQueue<Object> queue)
+        {
+            super(referent, queue);
+            hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o instanceof WeakKey) {
+                Object referent = get();
+                return referent != null && referent == ((WeakKey) o).get();
+            }
+            if (o instanceof LookupKey) {
+                return get() == ((LookupKey) o).referent;
+            }
+            return false;
+        }
+    }
+
+    private static final class LookupKey
+    {
+        private final Object referent;
+
+        LookupKey(Object referent)
+        {
+            this.referent = referent;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (o instanceof WeakKey) {
+                return referent == ((WeakKey) o).get();
+            }
+            return o instanceof LookupKey && referent == ((LookupKey) o).referent;
+        }
+    }
+}
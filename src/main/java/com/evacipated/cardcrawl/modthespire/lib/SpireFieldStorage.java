@@ -0,0 +1,27 @@
+package com.evacipated.cardcrawl.modthespire.lib;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Selects where the value of a SpireField is stored.
+// INSTANCE_FIELD adds a real field to the patched class (the default).
+// SIDE_TABLE keeps values in a weak identity map instead, so instances that
+// never have the field set don't grow in size.
+// With SIDE_TABLE the default value is made on the first get for each instance,
+// not when the instance is constructed. A DefaultValue that counts, reads game
+// state or otherwise depends on when it runs will see that later point.
+// Only instance SpireFields can use SIDE_TABLE, StaticSpireFields ignore it.
+@Target({ElementType.FIELD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SpireFieldStorage
+{
+    Strategy value() default Strategy.INSTANCE_FIELD;
+
+    enum Strategy
+    {
+        INSTANCE_FIELD,
+        SIDE_TABLE
+    }
+}
@@ -8,4 +8,20 @@ import java.lang.annotation.Target;
 @Target({ElementType.TYPE})
 @Retention(RetentionPolicy.RUNTIME)
 public @interface SpireInitializer {
+    // initialize() doesn't touch anything another mod might be setting up at the same time, so it can
+    // run on a worker thread once every mod this one depends on has finished initializing
+    boolean threadSafe() default false;
+
+    Phase phase() default Phase.STARTUP;
+
+    enum Phase
+    {
+        // Before the game starts, as always
+        STARTUP,
+        // On the render thread once the game window is up, while the splash screen shows.
+        // Anything still waiting when the main menu is made runs then.
+        // Deferred initializers run in mod load order among themselves, but always after every
+        // STARTUP one: a mod depending on this one does not wait for it unless it's deferred too
+        DEFERRED
+    }
 }
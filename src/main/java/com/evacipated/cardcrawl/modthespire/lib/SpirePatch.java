@@ -14,6 +14,9 @@ public @interface SpirePatch
     String[] paramtypes() default {"DEFAULT"};
     String requiredModId() default "";
     boolean optional() default false;
+    // Prefix, Postfix and Insert patches in this class can be turned on and off at runtime with SpireToggle.
+    // They must return void or SpireReturn
+    boolean toggleable() default false;
 
     String CONSTRUCTOR = "<ctor>";
     String STATICINITIALIZER = "<staticinit>";
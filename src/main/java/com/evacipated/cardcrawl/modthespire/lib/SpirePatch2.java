@@ -14,4 +14,7 @@ public @interface SpirePatch2
     String[] paramtypes() default {"DEFAULT"};
     String requiredModId() default "";
     boolean optional() default false;
+    // Prefix, Postfix and Insert patches in this class can be turned on and off at runtime with SpireToggle.
+    // They must return void or SpireReturn
+    boolean toggleable() default false;
 }
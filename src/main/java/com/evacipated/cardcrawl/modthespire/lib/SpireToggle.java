@@ -0,0 +1,105 @@
+package com.evacipated.cardcrawl.modthespire.lib;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Turns the patches of a @SpirePatch(toggleable = true) patch class on and off at runtime.
+// Calls to toggleable patches are linked through an invokedynamic call site that either
+// calls the patch or does nothing, so while a patch is off the JIT can drop the call completely.
+// A disabled Prefix or Insert that returns SpireReturn acts as if it returned SpireReturn.Continue()
+public final class SpireToggle
+{
+    private static final MethodHandle NOOP;
+    private static final Map<Class<?>, Toggle> toggles = new HashMap<>();
+
+    static
+    {
+        try {
+            NOOP = MethodHandles.lookup().findStatic(SpireToggle.class, "noop", MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static class Toggle
+    {
+        boolean enabled = true;
+        final List<Site> sites = new ArrayList<>();
+    }
+
+    private static class Site
+    {
+        final MutableCallSite callSite;
+        final MethodHandle enabled;
+        final MethodHandle disabled;
+
+        Site(MethodHandle enabled, MethodHandle disabled, boolean isEnabled)
+        {
+            this.enabled = enabled;
+            this.disabled = disabled;
+            callSite = new MutableCallSite(isEnabled ? enabled : disabled);
+        }
+    }
+
+    private SpireToggle()
+    {
+    }
+
+    private static void noop()
+    {
+    }
+
+    public static synchronized boolean isEnabled(Class<?> patchClass)
+    {
+        Toggle toggle = toggles.get(patchClass);
+        return toggle == null || toggle.enabled;
+    }
+
+    public static synchronized void setEnabled(Class<?> patchClass, boolean enabled)
+    {
+        Toggle toggle = toggles.computeIfAbsent(patchClass, k -> new Toggle());
+        if (toggle.enabled == enabled) {
+            return;
+        }
+        toggle.enabled = enabled;
+        if (toggle.sites.isEmpty()) {
+            return;
+        }
+
+        MutableCallSite[] callSites = new MutableCallSite[toggle.sites.size()];
+        for (int i = 0; i < callSites.length; ++i) {
+            Site site = toggle.sites.get(i);
+            site.callSite.setTarget(enabled ? site.enabled : site.disabled);
+            callSites[i] = site.callSite;
+        }
+        MutableCallSite.syncAll(callSites);
+    }
+
+    // Bootstrap method for the call sites, not meant to be called directly
+    public static CallSite bootstrap(MethodHandles.Lookup caller, String name, MethodType type, Class<?> patchClass)
+        throws NoSuchMethodException, IllegalAccessException
+    {
+        MethodHandle enabled = caller.findStatic(patchClass, name, type);
+        MethodHandle disabled;
+        if (type.returnType() == void.class) {
+            disabled = NOOP;
+        } else {
+            disabled = MethodHandles.constant(type.returnType(), SpireReturn.Continue());
+        }
+        disabled = MethodHandles.dropArguments(disabled, 0, type.parameterList());
+
+        synchronized (SpireToggle.class) {
+            Toggle toggle = toggles.computeIfAbsent(patchClass, k -> new Toggle());
+            Site site = new Site(enabled, disabled, toggle.enabled);
+            toggle.sites.add(site);
+            return site.callSite;
+        }
+    }
+}
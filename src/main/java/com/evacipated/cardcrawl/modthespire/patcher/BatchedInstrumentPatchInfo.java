@@ -0,0 +1,130 @@
+package com.evacipated.cardcrawl.modthespire.patcher;
+
+import com.evacipated.cardcrawl.modthespire.Loader;
+import com.evacipated.cardcrawl.modthespire.patcher.javassist.ChainedExprEditor;
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.expr.ExprEditor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Every Instrument patch on one method, applied in a single pass over its bytecode
+public class BatchedInstrumentPatchInfo extends PatchInfo
+{
+    private List<InstrumentPatchInfo> patches;
+
+    private BatchedInstrumentPatchInfo(CtBehavior ctMethodToPatch, List<InstrumentPatchInfo> patches)
+    {
+        super(ctMethodToPatch, null);
+        this.patches = patches;
+        this.context = patches.get(0).context;
+    }
+
+    // Replaces the Instrument patches on each method with one batch, placed where the
+    // first of them was. Order within a batch is the order they were given in
+    public static List<PatchInfo> batch(Collection<PatchInfo> patchInfos)
+    {
+        Map<CtBehavior, List<InstrumentPatchInfo>> batches = new LinkedHashMap<>();
+        for (PatchInfo p : patchInfos) {
+            if (p instanceof InstrumentPatchInfo) {
+                batches.computeIfAbsent(p.ctMethodToPatch, k -> new ArrayList<>()).add((InstrumentPatchInfo) p);
+            }
+        }
+
+        List<PatchInfo> ret = new ArrayList<>(patchInfos.size());
+        for (PatchInfo p : patchInfos) {
+            if (p instanceof InstrumentPatchInfo) {
+                List<InstrumentPatchInfo> batch = batches.get(p.ctMethodToPatch);
+                if (batch.get(0) != p) {
+                    continue;
+                }
+                if (batch.size() == 1) {
+                    ret.add(p);
+                } else {
+                    ret.add(new BatchedInstrumentPatchInfo(p.ctMethodToPatch, batch));
+                }
+            } else {
+                ret.add(p);
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    List<InstrumentPatchInfo> members()
+    {
+        return patches;
+    }
+
+    @Override
+    public void debugPrint()
+    {
+        for (InstrumentPatchInfo p : patches) {
+            p.debugPrint();
+        }
+        System.out.println(" - Batched " + patches.size() + " Instruments into one pass");
+    }
+
+    @Override
+    protected String patchClassName()
+    {
+        return patches.get(0).patchClassName();
+    }
+
+    @Override
+    protected String debugMsg()
+    {
+        return "Adding Instruments...";
+    }
+
+    @Override
+    public int patchOrdering()
+    {
+        return -1;
+    }
+
+    // Applied one after another, each Instrument method is only called once the patches before it
+    // are in. A batch calls them all first, which is only done when none of them can tell the difference
+    @Override
+    public void doPatch() throws PatchingException
+    {
+        for (int i = 1; i < patches.size(); ++i) {
+            if (!patches.get(i).hasPlainFactory()) {
+                if (Loader.DEBUG) {
+                    System.out.println(" - " + patches.get(i).patchClassName() + " does more than make its editor, applying one at a time");
+                }
+                doPatchEach();
+                return;
+            }
+        }
+
+        List<ExprEditor> editors = new ArrayList<>(patches.size());
+        for (InstrumentPatchInfo p : patches) {
+            editors.add(p.makeExprEditor());
+        }
+        try {
+            ctMethodToPatch.instrument(new ChainedExprEditor(editors));
+        } catch (ChainedExprEditor.EditorException e) {
+            // Blame the patch whose editor failed rather than the batch
+            InstrumentPatchInfo failed = patches.get(e.getEditor());
+            throw new PatchingException(failed.patchClassName() + ": Instrument failed on " + ctMethodToPatch.getLongName(), e.getCause());
+        } catch (CannotCompileException e) {
+            throw new PatchingException(e);
+        }
+    }
+
+    private void doPatchEach() throws PatchingException
+    {
+        for (InstrumentPatchInfo p : patches) {
+            try {
+                ctMethodToPatch.instrument(p.makeExprEditor());
+            } catch (CannotCompileException e) {
+                throw new PatchingException(p.patchClassName() + ": Instrument failed on " + ctMethodToPatch.getLongName(), e);
+            }
+        }
+    }
+}
@@ -1,20 +1,22 @@
 package com.evacipated.cardcrawl.modthespire.patcher;
 
+import com.evacipated.cardcrawl.modthespire.ClassHierarchy;
 import com.evacipated.cardcrawl.modthespire.Loader;
 import com.evacipated.cardcrawl.modthespire.lib.SpireField;
+import com.evacipated.cardcrawl.modthespire.lib.SpireFieldSideTable;
+import com.evacipated.cardcrawl.modthespire.lib.SpireFieldStorage;
 import com.evacipated.cardcrawl.modthespire.lib.StaticSpireField;
 import javassist.*;
 import javassist.bytecode.*;
 import javassist.bytecode.annotation.Annotation;
-import javassist.bytecode.annotation.AnnotationImpl;
 import javassist.expr.ExprEditor;
 import javassist.expr.MethodCall;
 import javassist.expr.NewExpr;
 
-import java.lang.reflect.Proxy;
-import java.util.Random;
+import java.nio.charset.StandardCharsets;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 
 public class ClassPatchInfo extends PatchInfo
 {
@@ -47,6 +49,18 @@ public class ClassPatchInfo extends PatchInfo
         return ctPatchClass.getName();
     }
 
+    @Override
+    String targetClassName()
+    {
+        return ctClassToPatch.getName();
+    }
+
+    @Override
+    String sortKey()
+    {
+        return patchClassName() + " " + ctClassToPatch.getName();
+    }
+
     @Override
     public int patchOrdering()
     {
@@ -61,11 +75,17 @@ public class ClassPatchInfo extends PatchInfo
                 boolean isStatic = f.getType().getName().equals(StaticSpireField.class.getCanonicalName());
                 boolean isSpireField = isStatic || f.getType().getName().equals(SpireField.class.getCanonicalName());
                 if (isSpireField) {
+                    boolean isSideTable = isSideTable(f);
+                    if (isStatic && isSideTable) {
+                        System.out.println("WARNING: " + ctPatchClass.getName() + "." + f.getName()
+                            + " is a StaticSpireField, @SpireFieldStorage(SIDE_TABLE) has no effect on it");
+                        isSideTable = false;
+                    }
                     int tries = 100;
                     while (tries > 0) {
                         --tries;
                         // Make the field
-                        String fieldName = String.format("%s_%d", f.getName(), new Random().nextInt(1000));
+                        String fieldName = makeFieldName(f, 99 - tries);
                         String fieldType;
 
                         try {
@@ -103,42 +123,50 @@ public class ClassPatchInfo extends PatchInfo
                             }
                         }
 
-                        String str = String.format("public%s %s %s;",
-                            (isStatic ? " static" : ""),
-                            fieldType, fieldName);
-                        if (Loader.DEBUG) {
-                            System.out.println(" - Adding Field: " + str);
-                        }
-                        CtField new_f = CtField.make(str, ctClassToPatch);
+                        if (!isSideTable) {
+                            String str = String.format("public%s %s %s;",
+                                (isStatic ? " static" : ""),
+                                fieldType, fieldName);
+                            if (Loader.DEBUG) {
+                                System.out.println(" - Adding Field: " + str);
+                            }
+                            CtField new_f = CtField.make(str, ctClassToPatch);
 
-                        // Copy annotations
-                        ConstPool constPool = ctClassToPatch.getClassFile().getConstPool();
-                        AnnotationsAttribute attr = new AnnotationsAttribute(constPool, AnnotationsAttribute.visibleTag);
-                        for (Object a : f.getAvailableAnnotations()) {
-                            if (Proxy.getInvocationHandler(a) instanceof AnnotationImpl) {
-                                if (Loader.DEBUG) {
-                                    System.out.println("   - Copying annotation: " + a);
+                            // Copy annotations
+                            ConstPool constPool = ctClassToPatch.getClassFile().getConstPool();
+                            AnnotationsAttribute attr = new AnnotationsAttribute(constPool, AnnotationsAttribute.visibleTag);
+                            // Copied from the class file, so the annotation types aren't loaded
+                            for (String tag : new String[]{AnnotationsAttribute.visibleTag, AnnotationsAttribute.invisibleTag}) {
+                                AnnotationsAttribute fieldAttr = (AnnotationsAttribute) f.getFieldInfo2().getAttribute(tag);
+                                if (fieldAttr == null) {
+                                    continue;
                                 }
-                                AnnotationImpl impl = (AnnotationImpl) Proxy.getInvocationHandler(a);
-                                Annotation annotation = new Annotation(impl.getTypeName(), constPool);
-                                if (impl.getAnnotation().getMemberNames() != null) {
-                                    for (Object memberName : impl.getAnnotation().getMemberNames()) {
-                                        annotation.addMemberValue((String) memberName, impl.getAnnotation().getMemberValue((String) memberName));
+                                for (Annotation a : fieldAttr.getAnnotations()) {
+                                    if (Loader.DEBUG) {
+                                        System.out.println("   - Copying annotation: " + a);
                                     }
+                                    Annotation annotation = new Annotation(a.getTypeName(), constPool);
+                                    if (a.getMemberNames() != null) {
+                                        for (Object memberName : a.getMemberNames()) {
+                                            annotation.addMemberValue((String) memberName, a.getMemberValue((String) memberName));
+                                        }
+                                    }
+                                    attr.addAnnotation(annotation);
                                 }
-                                attr.addAnnotation(annotation);
                             }
-                        }
-                        new_f.getFieldInfo().addAttribute(attr);
+                            new_f.getFieldInfo().addAttribute(attr);
 
-                        String expr = String.format("(%s) %s.%s.getDefaultValue()", fieldType, ctPatchClass.getName(), f.getName());
-                        try {
-                            ctClassToPatch.addField(new_f, CtField.Initializer.byExpr(expr));
-                        } catch (DuplicateMemberException e) {
-                            if (tries == 0) {
-                                throw e;
+                            String expr = String.format("(%s) %s.%s.getDefaultValue()", fieldType, ctPatchClass.getName(), f.getName());
+                            try {
+                                ctClassToPatch.addField(new_f, CtField.Initializer.byExpr(expr));
+                            } catch (DuplicateMemberException e) {
+                                if (tries == 0) {
+                                    throw e;
+                                }
+                                continue;
                             }
-                            continue;
+                        } else if (Loader.DEBUG) {
+                            System.out.println(" - Using side table: " + fieldName);
                         }
 
                         CtConstructor staticinit = ctPatchClass.getClassInitializer();
@@ -150,9 +178,16 @@ public class ClassPatchInfo extends PatchInfo
                         CtClass ctAccessor = ctPatchClass.makeNestedClass(fieldName + "_Accessor", true);
                         ctAccessor.setSuperclass(f.getType());
                         // Check for any pre-existing initializers for SpireFields
-                        FindSpireFieldInitializers found = new FindSpireFieldInitializers(ctPatchClass.getClassPool(), ctAccessor);
+                        FindSpireFieldInitializers found = new FindSpireFieldInitializers(ctPatchClass.getClassPool(), ctAccessor, context().getHierarchy());
                         ctPatchClass.instrument(found);
 
+                        if (isSideTable) {
+                            String tableStr = String.format("private static final %s __table;", SpireFieldSideTable.class.getName());
+                            String tableExpr = String.format("new %s(\"%s.%s\")",
+                                SpireFieldSideTable.class.getName(), ctPatchClass.getName(), f.getName());
+                            ctAccessor.addField(CtField.make(tableStr, ctAccessor), CtField.Initializer.byExpr(tableExpr));
+                        }
+
                         // Finish creating field accessor
                         CtClass ctSpireField = f.getType().getClassPool().get(SpireField.class.getName());
                         ctAccessor.addConstructor(CtNewConstructor.make(
@@ -168,13 +203,17 @@ public class ClassPatchInfo extends PatchInfo
                         if (found.madeGet) {
                             getStr = "super_get(__instance);";
                         }
+                        String getBody;
+                        if (isSideTable) {
+                            getBody = "return __table.get(__instance, this);";
+                        } else {
+                            getBody = String.format("return ((%s) __instance).%s;", ctClassToPatch.getName(), fieldName);
+                        }
                         ctAccessor.addMethod(CtNewMethod.make(
-                            String.format("public Object get(Object __instance) {" +
-                                    getStr +
-                                    "return ((%s) __instance).%s;" +
-                                    "}",
-                                ctClassToPatch.getName(), fieldName
-                            ),
+                            "public Object get(Object __instance) {" +
+                                getStr +
+                                getBody +
+                                "}",
                             ctAccessor
                         ));
                         // Setter
@@ -182,23 +221,36 @@ public class ClassPatchInfo extends PatchInfo
                         if (found.madeSet && fieldType.equals(found.setType.getName())) {
                             setStr = String.format("super_set(__instance, (%s) value);", found.setType.getName());
                         }
+                        String setBody;
+                        if (isSideTable) {
+                            setBody = String.format("__table.set(__instance, (%s) value);", fieldType);
+                        } else {
+                            setBody = String.format("((%s) __instance).%s = (%s) value;", ctClassToPatch.getName(), fieldName, fieldType);
+                        }
                         ctAccessor.addMethod(CtNewMethod.make(
-                            String.format("public void set(Object __instance, Object value) {" +
-                                    "((%s) __instance).%s = (%s) value;" +
-                                    setStr +
-                                    "}",
-                                ctClassToPatch.getName(), fieldName, fieldType
-                            ),
+                            "public void set(Object __instance, Object value) {" +
+                                setBody +
+                                setStr +
+                                "}",
                             ctAccessor
                         ));
 
                         // Make and initialize SpireField object
-                        String src = String.format("{\n" +
-                                "%s = new %s(%s);" +
-                                "%s.initialize(%s, \"%s\");\n" +
-                                "}",
-                            f.getName(), ctAccessor.getName(), f.getName(),
-                            f.getName(), ctClassToPatch.getName() + ".class", fieldName);
+                        String src;
+                        if (isSideTable) {
+                            // No real field exists, so there's nothing to initialize
+                            src = String.format("{\n" +
+                                    "%s = new %s(%s);\n" +
+                                    "}",
+                                f.getName(), ctAccessor.getName(), f.getName());
+                        } else {
+                            src = String.format("{\n" +
+                                    "%s = new %s(%s);" +
+                                    "%s.initialize(%s, \"%s\");\n" +
+                                    "}",
+                                f.getName(), ctAccessor.getName(), f.getName(),
+                                f.getName(), ctClassToPatch.getName() + ".class", fieldName);
+                        }
                         if (Loader.DEBUG) {
                             System.out.println(src);
                         }
@@ -211,25 +263,47 @@ public class ClassPatchInfo extends PatchInfo
             if (Loader.DEBUG) {
                 System.out.println();
             }
-        } catch (CannotCompileException | NotFoundException e) {
+        } catch (CannotCompileException | NotFoundException | ClassNotFoundException e) {
             throw new PatchingException(e);
         }
     }
 
+    // Field names are derived from the mod and patch class so that patching
+    // the same inputs always produces the same bytes
+    private String makeFieldName(CtField f, int attempt)
+    {
+        CRC32 crc = new CRC32();
+        String key = modID() + ":" + ctPatchClass.getName() + ":" + ctClassToPatch.getName();
+        crc.update(key.getBytes(StandardCharsets.UTF_8));
+        String name = String.format("%s_%08x", f.getName(), crc.getValue());
+        if (attempt > 0) {
+            name += "_" + attempt;
+        }
+        return name;
+    }
+
+    private static boolean isSideTable(CtField f) throws ClassNotFoundException
+    {
+        SpireFieldStorage storage = (SpireFieldStorage) f.getAnnotation(SpireFieldStorage.class);
+        return storage != null && storage.value() == SpireFieldStorage.Strategy.SIDE_TABLE;
+    }
+
     private static class FindSpireFieldInitializers extends ExprEditor
     {
         private ClassPool pool;
         private CtClass ctSpireField;
         private CtClass ctStaticSpireField;
         private CtClass ctAccessor;
+        private ClassHierarchy hierarchy;
 
         boolean madeGet = false;
         boolean madeSet = false;
         CtClass setType = null;
 
-        FindSpireFieldInitializers(ClassPool pool, CtClass ctAccessor) throws NotFoundException
+        FindSpireFieldInitializers(ClassPool pool, CtClass ctAccessor, ClassHierarchy hierarchy) throws NotFoundException
         {
             this.pool = pool;
+            this.hierarchy = hierarchy;
             ctSpireField = pool.get(SpireField.class.getName());
             ctStaticSpireField = pool.get(StaticSpireField.class.getName());
             this.ctAccessor = ctAccessor;
@@ -242,6 +316,13 @@ public class ClassPatchInfo extends PatchInfo
                 return;
             }
 
+            // Most new expressions aren't SpireFields at all, skip those without a CtClass when possible
+            if (hierarchy != null
+                && Boolean.FALSE.equals(hierarchy.isSubclass(e.getClassName(), ctSpireField.getName()))
+                && Boolean.FALSE.equals(hierarchy.isSubclass(e.getClassName(), ctStaticSpireField.getName()))) {
+                return;
+            }
+
             try {
                 CtClass ctOriginal = pool.get(e.getClassName());
                 CtClass ctClass = ctOriginal;
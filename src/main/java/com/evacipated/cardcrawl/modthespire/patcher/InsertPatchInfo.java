@@ -7,6 +7,7 @@ import java.util.List;
 import com.evacipated.cardcrawl.modthespire.Loader;
 import com.evacipated.cardcrawl.modthespire.lib.SpireInsertPatch;
 import com.evacipated.cardcrawl.modthespire.lib.SpireReturn;
+import com.evacipated.cardcrawl.modthespire.patcher.javassist.MultiInsertAt;
 import javassist.*;
 
 public class InsertPatchInfo extends ParameterPatchInfo
@@ -81,17 +82,20 @@ public class InsertPatchInfo extends ParameterPatchInfo
         return new InsertParamInfo2(toPatch, patchMethod, position);
     }
 
-    private void applyPatch(String src, int loc) throws CannotCompileException
-    {
-        ctMethodToPatch.insertAt(loc, src);
-    }
-
     @Override
     protected void applyPatch(String src) throws CannotCompileException
     {
-        for (LineNumberAndPatchType patchLoc : locs) {
-            applyPatch(src, patchLoc.lineNumber);
+        if (!context().uses(Rewrite.MULTI_INSERT)) {
+            for (LineNumberAndPatchType patchLoc : locs) {
+                ctMethodToPatch.insertAt(patchLoc.lineNumber, src);
+            }
+            return;
+        }
+        int[] lines = new int[locs.size()];
+        for (int i = 0; i < lines.length; ++i) {
+            lines[i] = locs.get(i).lineNumber;
         }
+        MultiInsertAt.insertAt(ctMethodToPatch, lines, src);
     }
 
     protected class InsertParamTransformer extends ParamTransformer
@@ -2,6 +2,9 @@ package com.evacipated.cardcrawl.modthespire.patcher;
 
 import javassist.CannotCompileException;
 import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.NotFoundException;
 import javassist.expr.ExprEditor;
 
 import java.lang.reflect.InvocationTargetException;
@@ -35,13 +38,34 @@ public class InstrumentPatchInfo extends PatchInfo
         return -1;
     }
 
+    // Calling the Instrument method has no effect besides making the editor,
+    // so it doesn't matter whether the patches before it have been applied yet
+    boolean hasPlainFactory()
+    {
+        try {
+            CtClass patchClass = ctMethodToPatch.getDeclaringClass().getClassPool().get(patchClassName());
+            CtMethod factory = patchClass.getDeclaredMethod(method.getName(), new CtClass[0]);
+            return new PatchBodyAnalyzer(factory, true).onlyConstructsPlainObject();
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    ExprEditor makeExprEditor() throws PatchingException
+    {
+        try {
+            return (ExprEditor) method.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new PatchingException(e);
+        }
+    }
+
     @Override
     public void doPatch() throws PatchingException
     {
         try {
-            ExprEditor exprEditor = (ExprEditor) method.invoke(null);
-            ctMethodToPatch.instrument(exprEditor);
-        } catch (IllegalAccessException | CannotCompileException | InvocationTargetException e) {
+            ctMethodToPatch.instrument(makeExprEditor());
+        } catch (CannotCompileException e) {
             throw new PatchingException(e);
         }
     }
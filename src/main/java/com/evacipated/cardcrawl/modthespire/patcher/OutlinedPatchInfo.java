@@ -0,0 +1,254 @@
+package com.evacipated.cardcrawl.modthespire.patcher;
+
+import com.evacipated.cardcrawl.modthespire.Loader;
+import com.evacipated.cardcrawl.modthespire.lib.SpireReturn;
+import javassist.*;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.MethodInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Every Prefix (or every Postfix) patch on one method.
+// Normally they're inserted inline as usual, but if that pushes the method over one of
+// the JIT's size limits (or outlining is forced on), the calls are moved into a synthetic
+// static helper on the patched class and the method only gets a single call to it.
+// Patches that write back to ByRef parameters, capture private fields or replace the
+// return value can't be moved, they stay inline and split the calls around them into separate helpers
+public class OutlinedPatchInfo extends PatchInfo
+{
+    private static final String HELPER_PREFIX = "__mts$outline$";
+
+    private List<ParameterPatchInfo> patches;
+
+    private OutlinedPatchInfo(CtBehavior ctMethodToPatch, List<ParameterPatchInfo> patches)
+    {
+        super(ctMethodToPatch, null);
+        this.patches = patches;
+        this.context = patches.get(0).context;
+    }
+
+    // Replaces the Prefix and Postfix patches on each method with one group per kind, placed where the
+    // first of them was. Order within a group is the order they were given in
+    public static List<PatchInfo> group(Collection<PatchInfo> patchInfos)
+    {
+        Map<List<Object>, List<ParameterPatchInfo>> groups = new LinkedHashMap<>();
+        for (PatchInfo p : patchInfos) {
+            if (p instanceof PrefixPatchInfo || p instanceof PostfixPatchInfo) {
+                groups.computeIfAbsent(groupKey(p), k -> new ArrayList<>()).add((ParameterPatchInfo) p);
+            }
+        }
+
+        List<PatchInfo> ret = new ArrayList<>(patchInfos.size());
+        for (PatchInfo p : patchInfos) {
+            if (p instanceof PrefixPatchInfo || p instanceof PostfixPatchInfo) {
+                List<ParameterPatchInfo> group = groups.get(groupKey(p));
+                if (group.get(0) != p) {
+                    continue;
+                }
+                if (group.size() == 1) {
+                    ret.add(p);
+                } else {
+                    ret.add(new OutlinedPatchInfo(p.ctMethodToPatch, group));
+                }
+            } else {
+                ret.add(p);
+            }
+        }
+        return ret;
+    }
+
+    private static List<Object> groupKey(PatchInfo p)
+    {
+        return Arrays.asList(p.ctMethodToPatch, p.getClass());
+    }
+
+    @Override
+    List<ParameterPatchInfo> members()
+    {
+        return patches;
+    }
+
+    @Override
+    public void debugPrint()
+    {
+        for (ParameterPatchInfo p : patches) {
+            p.debugPrint();
+        }
+        System.out.println(" - Grouped " + patches.size() + " patches");
+    }
+
+    @Override
+    protected String patchClassName()
+    {
+        return patches.get(0).patchClassName();
+    }
+
+    @Override
+    protected String debugMsg()
+    {
+        return patches.get(0).debugMsg();
+    }
+
+    @Override
+    public int patchOrdering()
+    {
+        return patches.get(0).patchOrdering();
+    }
+
+    @Override
+    public void doPatch() throws PatchingException
+    {
+        List<ParameterPatchInfo> live = new ArrayList<>(patches.size());
+        for (ParameterPatchInfo p : patches) {
+            p.makeSource();
+            if (!p.isNoOp) {
+                live.add(p);
+            }
+        }
+        if (live.isEmpty()) {
+            return;
+        }
+
+        try {
+            MethodInfo methodInfo = ctMethodToPatch.getMethodInfo();
+            CodeAttribute ca = methodInfo.getCodeAttribute();
+            if (!context().isOutlinePatches() && ca != null) {
+                CodeAttribute saved = (CodeAttribute) ca.copy(methodInfo.getConstPool(), null);
+                int before = ca.getCodeLength();
+                // Toggleable calls are only linked once the patches are staying inline,
+                // linking adds to the class's BootstrapMethods, which rolling back the code wouldn't undo
+                for (ParameterPatchInfo p : live) {
+                    p.insertInline();
+                }
+                int after = methodInfo.getCodeAttribute().getCodeLength();
+                for (ParameterPatchInfo p : live) {
+                    after += p.toggleGrowth();
+                }
+                if (!PatchSizeReport.crossesLimit(before, after)) {
+                    for (ParameterPatchInfo p : live) {
+                        p.linkToggle();
+                    }
+                    return;
+                }
+                if (Loader.DEBUG) {
+                    System.out.println(" - Grew from " + before + " to " + after + " bytes, outlining");
+                }
+                methodInfo.setCodeAttribute(saved);
+            }
+
+            List<ParameterPatchInfo> run = new ArrayList<>();
+            for (ParameterPatchInfo p : live) {
+                if (p.canOutline()) {
+                    run.add(p);
+                } else {
+                    applyOutlined(run);
+                    run.clear();
+                    p.applyInline();
+                }
+            }
+            applyOutlined(run);
+        } catch (CannotCompileException | NotFoundException e) {
+            throw new PatchingException(e);
+        }
+    }
+
+    private void applyOutlined(List<ParameterPatchInfo> run) throws CannotCompileException, NotFoundException
+    {
+        if (run.isEmpty()) {
+            return;
+        }
+        // A lone call with nothing to set up is no smaller as a call to a helper
+        if (run.size() == 1 && !run.get(0).hasByRefArrays()) {
+            run.get(0).applyInline();
+            return;
+        }
+
+        boolean hasEarlyReturn = false;
+        boolean usesResult = false;
+        for (ParameterPatchInfo p : run) {
+            hasEarlyReturn |= p.hasEarlyReturn;
+            usesResult |= p.usesResult();
+        }
+
+        // Each Prefix is inserted before the ones already applied, so they run last to first
+        List<ParameterPatchInfo> callOrder = new ArrayList<>(run);
+        if (run.get(0) instanceof PrefixPatchInfo) {
+            Collections.reverse(callOrder);
+        }
+
+        StringBuilder body = new StringBuilder("{\n");
+        for (ParameterPatchInfo p : callOrder) {
+            body.append(p.outlinedSrc());
+        }
+        if (hasEarlyReturn) {
+            body.append("return ").append(SpireReturn.class.getName()).append(".Continue();\n");
+        }
+        body.append("}");
+
+        CtClass ctClass = ctMethodToPatch.getDeclaringClass();
+        boolean isStatic = Modifier.isStatic(ctMethodToPatch.getModifiers());
+        CtClass[] methodParams = ctMethodToPatch.getParameterTypes();
+        List<CtClass> params = new ArrayList<>();
+        StringBuilder args = new StringBuilder();
+        if (!isStatic) {
+            params.add(ctClass);
+            args.append("$0");
+        }
+        for (int i = 0; i < methodParams.length; ++i) {
+            params.add(methodParams[i]);
+            args.append(args.length() > 0 ? ", " : "").append("$").append(i + 1);
+        }
+        if (usesResult) {
+            params.add(((CtMethod) ctMethodToPatch).getReturnType());
+            args.append(args.length() > 0 ? ", " : "").append("$_");
+        }
+
+        CtClass returnType = hasEarlyReturn ? ctClass.getClassPool().get(SpireReturn.class.getName()) : CtClass.voidType;
+        CtMethod helper = CtNewMethod.make(
+            Modifier.PRIVATE | Modifier.STATIC,
+            returnType,
+            helperName(ctClass),
+            params.toArray(new CtClass[0]),
+            null,
+            body.toString(),
+            ctClass
+        );
+        helper.getMethodInfo().setAccessFlags(helper.getMethodInfo().getAccessFlags() | AccessFlag.SYNTHETIC);
+        ctClass.addMethod(helper);
+
+        String call = ctClass.getName() + "." + helper.getName() + "(" + args + ");\n";
+        String src = "{\n";
+        if (hasEarlyReturn) {
+            src += SpireReturn.class.getName() + " opt = " + call + run.get(0).earlyReturnSrc();
+        } else {
+            src += call;
+        }
+        src += "}";
+
+        if (Loader.DEBUG) {
+            System.out.println(" - Outlined " + run.size() + " call(s) into " + helper.getName());
+            System.out.println(body);
+            System.out.println(src);
+        }
+        run.get(0).applyPatch(src);
+    }
+
+    private static String helperName(CtClass ctClass)
+    {
+        for (int i = 0; ; ++i) {
+            String name = HELPER_PREFIX + i;
+            try {
+                ctClass.getDeclaredMethod(name);
+            } catch (NotFoundException e) {
+                return name;
+            }
+        }
+    }
+}
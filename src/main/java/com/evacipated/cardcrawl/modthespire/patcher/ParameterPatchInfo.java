@@ -3,8 +3,12 @@ package com.evacipated.cardcrawl.modthespire.patcher;
 import com.evacipated.cardcrawl.modthespire.Loader;
 import com.evacipated.cardcrawl.modthespire.lib.ByRef;
 import com.evacipated.cardcrawl.modthespire.lib.SpireReturn;
+import com.evacipated.cardcrawl.modthespire.patcher.javassist.ToggleableCallLinker;
 import javassist.*;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 abstract class ParameterPatchInfo extends PatchInfo
 {
     // Feature toggles
@@ -12,10 +16,23 @@ abstract class ParameterPatchInfo extends PatchInfo
     protected boolean canByRefParams = false;
 
     protected String src;
+    protected String src2;
     protected String funccall;
     protected String funccallargs;
     protected String postcallsrc;
     protected String postcallsrc2;
+    protected PatchBodyAnalyzer body;
+    protected boolean hasEarlyReturn;
+    protected boolean isNoOp;
+
+    // Arguments that a static helper on the patched class can be passed instead: $0, $1, ..., and $_
+    private static final Pattern OUTLINE_ARG = Pattern.compile("\\$(\\d+|_)");
+    private static final Pattern OUTLINE_ARG_REF = Pattern.compile("(?<![\\w$])\\$(\\d+|_)(?![\\w$])");
+    private boolean outlineArgs;
+    private boolean usesResult;
+    private boolean hasByRefArrays;
+    // Source up to and including the patch call
+    private String callSrc;
 
     public ParameterPatchInfo(CtBehavior ctMethodToPatch, CtMethod patchMethod)
     {
@@ -39,11 +56,83 @@ abstract class ParameterPatchInfo extends PatchInfo
 
     protected abstract void applyPatch(String src) throws CannotCompileException;
 
+    // 0-based index of a patch method parameter
+    private int patchParamIndex(ParamInfo info)
+    {
+        return Modifier.isStatic(patchMethod.getModifiers()) ? info.getPosition() - 1 : info.getPosition();
+    }
+
     @Override
     public void doPatch() throws PatchingException
+    {
+        makeSource();
+        if (isNoOp) {
+            return;
+        }
+        try {
+            applyInline();
+        } catch (CannotCompileException e) {
+            throw new PatchingException(e);
+        }
+    }
+
+    void applyInline() throws CannotCompileException
+    {
+        insertInline();
+        linkToggle();
+    }
+
+    // The patch call without linking it for toggling, see linkToggle
+    void insertInline() throws CannotCompileException
+    {
+        if (Loader.DEBUG) {
+            System.out.println(src);
+        }
+        try {
+            applyPatch(src);
+        } catch (CannotCompileException e) {
+            try {
+                applyPatch(src2);
+            } catch (CannotCompileException e2) {
+                throw e;
+            }
+        }
+    }
+
+    void linkToggle() throws CannotCompileException
+    {
+        if (isToggleable() && context().uses(Rewrite.TOGGLE_LINKING)) {
+            if (ToggleableCallLinker.canLink(ctMethodToPatch.getDeclaringClass())) {
+                int linked = ToggleableCallLinker.link(ctMethodToPatch, patchMethod);
+                if (Loader.DEBUG) {
+                    System.out.println(" - Linked " + linked + " toggleable call(s)");
+                }
+            } else {
+                System.out.println("WARNING: " + ctMethodToPatch.getDeclaringClass().getName()
+                    + " is too old a class file for toggleable patches, " + patchClassName() + " can't be turned off");
+            }
+        }
+    }
+
+    // How many bytes linkToggle will add to the patched method
+    int toggleGrowth() throws CannotCompileException
+    {
+        if (!isToggleable() || !context().uses(Rewrite.TOGGLE_LINKING)
+            || !ToggleableCallLinker.canLink(ctMethodToPatch.getDeclaringClass())) {
+            return 0;
+        }
+        return ToggleableCallLinker.countCalls(ctMethodToPatch, patchMethod) * ToggleableCallLinker.GROWTH;
+    }
+
+    boolean isToggleable()
+    {
+        return patch != null && patch.toggleable();
+    }
+
+    void makeSource() throws PatchingException
     {
         try {
-            boolean hasEarlyReturn = false;
+            hasEarlyReturn = false;
             if (canSpireReturn) {
                 CtClass returnType = patchMethod.getReturnType();
                 if ((ctMethodToPatch instanceof CtMethod || ctMethodToPatch instanceof CtConstructor)
@@ -54,10 +143,30 @@ abstract class ParameterPatchInfo extends PatchInfo
                 }
             }
 
+            if (isToggleable()) {
+                CtClass returnType = patchMethod.getReturnType();
+                if (!returnType.equals(CtPrimitiveType.voidType) && !returnType.getName().equals(SpireReturn.class.getName())) {
+                    throw new PatchingException(patchMethod, "Toggleable patches must return void or SpireReturn");
+                }
+            }
+
+            body = new PatchBodyAnalyzer(patchMethod, context().uses(Rewrite.ELISION));
+            isNoOp = body.isNoOp(hasEarlyReturn);
+            if (hasEarlyReturn && !isNoOp && body.onlyReturnsContinue()) {
+                hasEarlyReturn = false;
+                context().elidedEarlyReturn();
+                if (Loader.DEBUG) {
+                    System.out.println(" - Only returns SpireReturn.Continue(), skipping early return check");
+                }
+            }
+
             src = "{\n";
             funccall = patchMethod.getDeclaringClass().getName() + "." + patchMethod.getName() + "(%s);\n";
             postcallsrc = "";
             postcallsrc2 = "";
+            outlineArgs = true;
+            usesResult = false;
+            hasByRefArrays = false;
 
             if (hasEarlyReturn) {
                 funccall = SpireReturn.class.getName() + " opt = " + funccall;
@@ -94,32 +203,13 @@ abstract class ParameterPatchInfo extends PatchInfo
             alterSrc();
 
             src += funccall;
-            String src2 = src;
+            callSrc = src;
+            src2 = src;
             src += postcallsrc;
             src2 += postcallsrc2;
 
             if (hasEarlyReturn) {
-                String earlyReturn = "if (opt.isPresent()) { return";
-                if (ctMethodToPatch instanceof CtMethod && !((CtMethod) ctMethodToPatch).getReturnType().equals(CtPrimitiveType.voidType)) {
-                    CtClass toPatchReturnType = ((CtMethod) ctMethodToPatch).getReturnType();
-                    String toPatchReturnTypeName = toPatchReturnType.getName();
-                    if (toPatchReturnType.isPrimitive()) {
-                        if (toPatchReturnType.equals(CtPrimitiveType.intType)) {
-                            toPatchReturnTypeName = "Integer";
-                        } else if (toPatchReturnType.equals(CtPrimitiveType.charType)) {
-                            toPatchReturnTypeName = "Character";
-                        } else {
-                            toPatchReturnTypeName = toPatchReturnTypeName.substring(0, 1).toUpperCase() + toPatchReturnTypeName.substring(1);
-                        }
-                        earlyReturn += " (";
-                    }
-                    earlyReturn += " (" + toPatchReturnTypeName + ")opt.get()";
-                    if (toPatchReturnType.isPrimitive()) {
-                        earlyReturn += ")." + toPatchReturnType.getName() + "Value()";
-                    }
-                }
-                earlyReturn += "; }\n";
-
+                String earlyReturn = earlyReturnSrc();
                 src += earlyReturn;
                 src2 += earlyReturn;
             }
@@ -127,23 +217,110 @@ abstract class ParameterPatchInfo extends PatchInfo
             src += "}";
             src2 += "}";
 
-            if (Loader.DEBUG) {
-                System.out.println(src);
-            }
-            try {
-                applyPatch(src);
-            } catch (CannotCompileException e) {
-                try {
-                    applyPatch(src2);
-                } catch (CannotCompileException e2) {
-                    throw e;
+            if (isNoOp) {
+                // Source is still generated above so that invalid patches are reported the same
+                context().elidedPatch();
+                if (Loader.DEBUG) {
+                    System.out.println(" - Patch is empty, skipping");
                 }
             }
-        } catch (CannotCompileException | NotFoundException | ClassNotFoundException e) {
+        } catch (NotFoundException | ClassNotFoundException e) {
             throw new PatchingException(e);
         }
     }
 
+    String earlyReturnSrc() throws NotFoundException
+    {
+        String earlyReturn = "if (opt.isPresent()) { return";
+        if (ctMethodToPatch instanceof CtMethod && !((CtMethod) ctMethodToPatch).getReturnType().equals(CtPrimitiveType.voidType)) {
+            CtClass toPatchReturnType = ((CtMethod) ctMethodToPatch).getReturnType();
+            String toPatchReturnTypeName = toPatchReturnType.getName();
+            if (toPatchReturnType.isPrimitive()) {
+                if (toPatchReturnType.equals(CtPrimitiveType.intType)) {
+                    toPatchReturnTypeName = "Integer";
+                } else if (toPatchReturnType.equals(CtPrimitiveType.charType)) {
+                    toPatchReturnTypeName = "Character";
+                } else {
+                    toPatchReturnTypeName = toPatchReturnTypeName.substring(0, 1).toUpperCase() + toPatchReturnTypeName.substring(1);
+                }
+                earlyReturn += " (";
+            }
+            earlyReturn += " (" + toPatchReturnTypeName + ")opt.get()";
+            if (toPatchReturnType.isPrimitive()) {
+                earlyReturn += ")." + toPatchReturnType.getName() + "Value()";
+            }
+        }
+        earlyReturn += "; }\n";
+        return earlyReturn;
+    }
+
+    private String outlineArg(String paramName)
+    {
+        if (!OUTLINE_ARG.matcher(paramName).matches()) {
+            outlineArgs = false;
+        } else if (paramName.equals("$_")) {
+            usesResult = true;
+        }
+        return paramName;
+    }
+
+    // Whether this patch can be called from a static helper on the patched class, see OutlinedPatchInfo.
+    // Its arguments must all be the instance, parameters or result of the patched method,
+    // nothing can be written back to them, and toggleable calls have to stay where they're linked
+    boolean canOutline()
+    {
+        if (!outlineArgs || !postcallsrc.isEmpty() || isToggleable() || ctMethodToPatch.getDeclaringClass().isInterface()) {
+            return false;
+        }
+        if (usesResult) {
+            try {
+                return ctMethodToPatch instanceof CtMethod
+                    && !((CtMethod) ctMethodToPatch).getReturnType().equals(CtPrimitiveType.voidType);
+            } catch (NotFoundException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean usesResult()
+    {
+        return usesResult;
+    }
+
+    boolean hasByRefArrays()
+    {
+        return hasByRefArrays;
+    }
+
+    // This patch's call as a block in the body of a static helper taking
+    // (instance, unless the patched method is static, patched method's parameters..., result, if usesResult()).
+    // An early return hands the SpireReturn back to the caller instead of returning
+    String outlinedSrc()
+    {
+        boolean isStatic = Modifier.isStatic(ctMethodToPatch.getModifiers());
+        int resultIndex;
+        try {
+            resultIndex = ctMethodToPatch.getParameterTypes().length + (isStatic ? 1 : 2);
+        } catch (NotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+
+        Matcher m = OUTLINE_ARG_REF.matcher(callSrc);
+        StringBuffer sb = new StringBuffer();
+        while (m.find()) {
+            String arg = m.group(1);
+            int index = arg.equals("_") ? resultIndex : Integer.parseInt(arg) + (isStatic ? 0 : 1);
+            m.appendReplacement(sb, Matcher.quoteReplacement("$" + index));
+        }
+        m.appendTail(sb);
+
+        if (hasEarlyReturn) {
+            sb.append("if (opt.isPresent()) { return opt; }\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
     protected class ParamTransformer
     {
         protected ParamInfo srcInfo;
@@ -214,45 +391,51 @@ abstract class ParameterPatchInfo extends PatchInfo
                 // to avoid a limitation in the javassist compiler being unable to compile
                 // multi-dimensional array initializers
                 src += tmp + " __param" + destInfo.getPosition() + " = new " + paramTypeName + ";\n";
-                src += "__param" + destInfo.getPosition() + "[0] = " + boxing(getParamName()) + ";\n";
+                src += "__param" + destInfo.getPosition() + "[0] = " + boxing(outlineArg(getParamName())) + ";\n";
+                hasByRefArrays = true;
                 funccallargs += "__param" + destInfo.getPosition();
 
-                postcallsrc  += getParamName() + " = ";
-                postcallsrc2 += getParamName() + " = ";
-
-                String typename = srcInfo.getTypename();
-                for (Object o : destInfo.getAnnotations()) {
-                    if (o instanceof ByRef && !((ByRef) o).type().isEmpty()) {
-                        typename = ((ByRef) o).type();
+                // The array is only read, nothing to copy back
+                if (!body.mayWriteArrayParam(patchParamIndex(destInfo))) {
+                    context().elidedByRef();
+                } else {
+                    postcallsrc  += getParamName() + " = ";
+                    postcallsrc2 += getParamName() + " = ";
+
+                    String typename = srcInfo.getTypename();
+                    for (Object o : destInfo.getAnnotations()) {
+                        if (o instanceof ByRef && !((ByRef) o).type().isEmpty()) {
+                            typename = ((ByRef) o).type();
+                        }
                     }
-                }
-                if (!typename.isEmpty()) {
-                    postcallsrc  += "(" + typename + ")";
-                    postcallsrc2 += "(com.megacrit.cardcrawl." + typename + ")";
-                }
-                postcallsrc  += "__param" + destInfo.getPosition() + "[0]";
-                postcallsrc2 += "__param" + destInfo.getPosition() + "[0]";
-                // Unboxing wrapper types
-                CtClass srcType = srcInfo.getType();
-                CtClass destType = destInfo.getType();
-                if (srcType == null && destInfo.isPrivateCapture()) {
-                    srcType = srcInfo.getPrivateCaptureType(destInfo);
-                }
-                if (srcType == null) {
-                    srcType = srcInfo.getDestByRefType(destInfo);
-                }
-                if (srcType != null && destType != null) {
-                    CtClass ctComponentType = destType.getComponentType();
-                    if (srcType.isPrimitive() && ctComponentType != null && !ctComponentType.isPrimitive()) {
-                        CtPrimitiveType ctPrimitive = (CtPrimitiveType) srcType;
-                        postcallsrc += "." + ctPrimitive.getGetMethodName() + "()";
-                        postcallsrc2 += "." + ctPrimitive.getGetMethodName() + "()";
+                    if (!typename.isEmpty()) {
+                        postcallsrc  += "(" + typename + ")";
+                        postcallsrc2 += "(com.megacrit.cardcrawl." + typename + ")";
+                    }
+                    postcallsrc  += "__param" + destInfo.getPosition() + "[0]";
+                    postcallsrc2 += "__param" + destInfo.getPosition() + "[0]";
+                    // Unboxing wrapper types
+                    CtClass srcType = srcInfo.getType();
+                    CtClass destType = destInfo.getType();
+                    if (srcType == null && destInfo.isPrivateCapture()) {
+                        srcType = srcInfo.getPrivateCaptureType(destInfo);
+                    }
+                    if (srcType == null) {
+                        srcType = srcInfo.getDestByRefType(destInfo);
                     }
+                    if (srcType != null && destType != null) {
+                        CtClass ctComponentType = destType.getComponentType();
+                        if (srcType.isPrimitive() && ctComponentType != null && !ctComponentType.isPrimitive()) {
+                            CtPrimitiveType ctPrimitive = (CtPrimitiveType) srcType;
+                            postcallsrc += "." + ctPrimitive.getGetMethodName() + "()";
+                            postcallsrc2 += "." + ctPrimitive.getGetMethodName() + "()";
+                        }
+                    }
+                    postcallsrc  += ";\n";
+                    postcallsrc2 += ";\n";
                 }
-                postcallsrc  += ";\n";
-                postcallsrc2 += ";\n";
             } else {
-                funccallargs += getParamName();
+                funccallargs += outlineArg(getParamName());
             }
 
             funccallargs += ", ";
@@ -320,45 +503,51 @@ abstract class ParameterPatchInfo extends PatchInfo
                 // to avoid a limitation in the javassist compiler being unable to compile
                 // multi-dimensional array initializers
                 src += tmp + " __param" + info.getPatchParamPosition() + " = new " + paramTypeName + ";\n";
-                src += "__param" + info.getPatchParamPosition() + "[0] = " + boxing(getParamName()) + ";\n";
+                src += "__param" + info.getPatchParamPosition() + "[0] = " + boxing(outlineArg(getParamName())) + ";\n";
+                hasByRefArrays = true;
                 funccallargs += "__param" + info.getPatchParamPosition();
 
-                postcallsrc  += getParamName() + " = ";
-                postcallsrc2 += getParamName() + " = ";
-
-                String typename = info.getTypename();
-                for (Object o : info.getAnnotations()) {
-                    if (o instanceof ByRef && !((ByRef) o).type().isEmpty()) {
-                        typename = ((ByRef) o).type();
+                // The array is only read, nothing to copy back
+                if (!body.mayWriteArrayParam(info.getPatchParamPosition())) {
+                    context().elidedByRef();
+                } else {
+                    postcallsrc  += getParamName() + " = ";
+                    postcallsrc2 += getParamName() + " = ";
+
+                    String typename = info.getTypename();
+                    for (Object o : info.getAnnotations()) {
+                        if (o instanceof ByRef && !((ByRef) o).type().isEmpty()) {
+                            typename = ((ByRef) o).type();
+                        }
                     }
-                }
-                if (!typename.isEmpty()) {
-                    postcallsrc  += "(" + typename + ")";
-                    postcallsrc2 += "(com.megacrit.cardcrawl." + typename + ")";
-                }
-                postcallsrc  += "__param" + info.getPatchParamPosition() + "[0]";
-                postcallsrc2 += "__param" + info.getPatchParamPosition() + "[0]";
-                // Unboxing wrapper types
-                CtClass srcType = info.getType();
-                CtClass destType = info.getPatchParamType();
-                if (srcType == null && info.isPrivateCapture()) {
-                    srcType = info.getPrivateCaptureType();
-                }
-                if (srcType == null) {
-                    srcType = info.getDestByRefType();
-                }
-                if (srcType != null && destType != null) {
-                    CtClass ctComponentType = destType.getComponentType();
-                    if (srcType.isPrimitive() && ctComponentType != null && !ctComponentType.isPrimitive()) {
-                        CtPrimitiveType ctPrimitive = (CtPrimitiveType) srcType;
-                        postcallsrc += "." + ctPrimitive.getGetMethodName() + "()";
-                        postcallsrc2 += "." + ctPrimitive.getGetMethodName() + "()";
+                    if (!typename.isEmpty()) {
+                        postcallsrc  += "(" + typename + ")";
+                        postcallsrc2 += "(com.megacrit.cardcrawl." + typename + ")";
+                    }
+                    postcallsrc  += "__param" + info.getPatchParamPosition() + "[0]";
+                    postcallsrc2 += "__param" + info.getPatchParamPosition() + "[0]";
+                    // Unboxing wrapper types
+                    CtClass srcType = info.getType();
+                    CtClass destType = info.getPatchParamType();
+                    if (srcType == null && info.isPrivateCapture()) {
+                        srcType = info.getPrivateCaptureType();
+                    }
+                    if (srcType == null) {
+                        srcType = info.getDestByRefType();
+                    }
+                    if (srcType != null && destType != null) {
+                        CtClass ctComponentType = destType.getComponentType();
+                        if (srcType.isPrimitive() && ctComponentType != null && !ctComponentType.isPrimitive()) {
+                            CtPrimitiveType ctPrimitive = (CtPrimitiveType) srcType;
+                            postcallsrc += "." + ctPrimitive.getGetMethodName() + "()";
+                            postcallsrc2 += "." + ctPrimitive.getGetMethodName() + "()";
+                        }
                     }
+                    postcallsrc  += ";\n";
+                    postcallsrc2 += ";\n";
                 }
-                postcallsrc  += ";\n";
-                postcallsrc2 += ";\n";
             } else {
-                funccallargs += getParamName();
+                funccallargs += outlineArg(getParamName());
             }
 
             funccallargs += ", ";
@@ -0,0 +1,237 @@
+package com.evacipated.cardcrawl.modthespire.patcher;
+
+import com.evacipated.cardcrawl.modthespire.lib.SpireReturn;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.CtMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Looks at a patch method's bytecode to find work the generated call doesn't need to do.
+// Every check is conservative: anything it can't prove is treated as needed
+public class PatchBodyAnalyzer
+{
+    private static final String SPIRE_RETURN = SpireReturn.class.getName();
+    private static final String SPIRE_RETURN_DESC = Descriptor.of(SPIRE_RETURN);
+
+    private final CtMethod patchMethod;
+    private final MethodInfo methodInfo;
+    private final ConstPool cp;
+    // Opcode positions in order, null if the body couldn't be read
+    private final List<Integer> positions;
+    private final CodeIterator iterator;
+
+    // Without analyzing, every check answers as if the work is needed
+    PatchBodyAnalyzer(CtMethod patchMethod, boolean analyze)
+    {
+        this.patchMethod = patchMethod;
+        methodInfo = patchMethod.getMethodInfo2();
+        cp = methodInfo.getConstPool();
+
+        CodeAttribute ca = methodInfo.getCodeAttribute();
+        List<Integer> positions = null;
+        CodeIterator iterator = null;
+        if (ca != null && analyze) {
+            iterator = ca.iterator();
+            positions = new ArrayList<>();
+            try {
+                while (iterator.hasNext()) {
+                    positions.add(iterator.next());
+                }
+            } catch (BadBytecode e) {
+                positions = null;
+            }
+        }
+        this.positions = positions;
+        this.iterator = iterator;
+    }
+
+    private int opcode(int i)
+    {
+        return iterator.byteAt(positions.get(i));
+    }
+
+    private boolean isContinueCall(int i)
+    {
+        if (opcode(i) != Opcode.INVOKESTATIC) {
+            return false;
+        }
+        int index = iterator.u16bitAt(positions.get(i) + 1);
+        return SPIRE_RETURN.equals(cp.getMethodrefClassName(index))
+            && "Continue".equals(cp.getMethodrefName(index));
+    }
+
+    // The patch does nothing: an empty void method, or one that only returns SpireReturn.Continue().
+    // Patch classes with a static initializer are never no-ops, calling the patch runs it
+    boolean isNoOp(boolean hasEarlyReturn)
+    {
+        if (positions == null || patchMethod.getDeclaringClass().getClassInitializer() != null) {
+            return false;
+        }
+        if (positions.size() == 1 && opcode(0) == Opcode.RETURN) {
+            return true;
+        }
+        return hasEarlyReturn && positions.size() == 2 && isContinueCall(0) && opcode(1) == Opcode.ARETURN;
+    }
+
+    // SpireReturn or an array of them, by field or return type descriptor
+    private static boolean isSpireReturnDesc(String desc)
+    {
+        int i = 0;
+        while (i < desc.length() && desc.charAt(i) == '[') {
+            ++i;
+        }
+        return desc.startsWith(SPIRE_RETURN_DESC, i);
+    }
+
+    private static String returnDesc(String methodDesc)
+    {
+        return methodDesc.substring(methodDesc.lastIndexOf(')') + 1);
+    }
+
+    // Every SpireReturn the patch can return comes from SpireReturn.Continue(),
+    // so there's never an early return to check for
+    boolean onlyReturnsContinue()
+    {
+        if (positions == null) {
+            return false;
+        }
+        try {
+            for (CtClass paramType : patchMethod.getParameterTypes()) {
+                if (isSpireReturnDesc(Descriptor.of(paramType))) {
+                    return false;
+                }
+            }
+        } catch (NotFoundException e) {
+            return false;
+        }
+
+        for (int i = 0; i < positions.size(); ++i) {
+            int pos = positions.get(i);
+            int index;
+            switch (opcode(i)) {
+                case Opcode.INVOKESTATIC:
+                case Opcode.INVOKEVIRTUAL:
+                case Opcode.INVOKESPECIAL:
+                case Opcode.INVOKEINTERFACE:
+                    index = iterator.u16bitAt(pos + 1);
+                    String desc = opcode(i) == Opcode.INVOKEINTERFACE ? cp.getInterfaceMethodrefType(index) : cp.getMethodrefType(index);
+                    if (isSpireReturnDesc(returnDesc(desc)) && !isContinueCall(i)) {
+                        return false;
+                    }
+                    break;
+                case Opcode.INVOKEDYNAMIC:
+                    index = iterator.u16bitAt(pos + 1);
+                    if (isSpireReturnDesc(returnDesc(cp.getUtf8Info(cp.getNameAndTypeDescriptor(cp.getInvokeDynamicNameAndType(index)))))) {
+                        return false;
+                    }
+                    break;
+                case Opcode.GETFIELD:
+                case Opcode.GETSTATIC:
+                    if (isSpireReturnDesc(cp.getFieldrefType(iterator.u16bitAt(pos + 1)))) {
+                        return false;
+                    }
+                    break;
+                case Opcode.CHECKCAST:
+                    if (cp.getClassInfo(iterator.u16bitAt(pos + 1)).replace("[]", "").equals(SPIRE_RETURN)) {
+                        return false;
+                    }
+                    break;
+                case Opcode.AALOAD:
+                    // Any array could be holding a SpireReturn once cast
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    // The method only returns a new object whose constructors do nothing but call the one above them,
+    // like an Instrument's "return new ExprEditor() {...}". Calling it has no effect besides that object
+    boolean onlyConstructsPlainObject()
+    {
+        if (positions == null || positions.size() != 4 || patchMethod.getDeclaringClass().getClassInitializer() != null) {
+            return false;
+        }
+        if (opcode(0) != Opcode.NEW || opcode(1) != Opcode.DUP || opcode(2) != Opcode.INVOKESPECIAL || opcode(3) != Opcode.ARETURN) {
+            return false;
+        }
+        String created = cp.getClassInfo(iterator.u16bitAt(positions.get(0) + 1));
+        int ctor = iterator.u16bitAt(positions.get(2) + 1);
+        if (!created.equals(cp.getMethodrefClassName(ctor)) || !"()V".equals(cp.getMethodrefType(ctor))) {
+            return false;
+        }
+
+        try {
+            CtClass cls = patchMethod.getDeclaringClass().getClassPool().get(created);
+            while (!cls.getName().equals(Object.class.getName())) {
+                if (cls.getClassInitializer() != null || !isPlainConstructor(cls.getDeclaredConstructor(new CtClass[0]))) {
+                    return false;
+                }
+                cls = cls.getSuperclass();
+            }
+        } catch (NotFoundException e) {
+            return false;
+        }
+        return true;
+    }
+
+    // this.super() and nothing else
+    private static boolean isPlainConstructor(CtConstructor ctor)
+    {
+        CodeAttribute ca = ctor.getMethodInfo2().getCodeAttribute();
+        if (ca == null) {
+            return false;
+        }
+        byte[] code = ca.getCode();
+        if (code.length != 5 || (code[0] & 0xff) != Opcode.ALOAD_0 || (code[1] & 0xff) != Opcode.INVOKESPECIAL || (code[4] & 0xff) != Opcode.RETURN) {
+            return false;
+        }
+        ConstPool ctorCp = ca.getConstPool();
+        int index = ((code[2] & 0xff) << 8) | (code[3] & 0xff);
+        return MethodInfo.nameInit.equals(ctorCp.getMethodrefName(index)) && "()V".equals(ctorCp.getMethodrefType(index));
+    }
+
+    // Whether the patch might store into element 0 of the array passed as parameter paramIndex (0-based).
+    // Only "param[0]" reads are recognised as not writing, any other use of the array counts as a write
+    boolean mayWriteArrayParam(int paramIndex)
+    {
+        if (positions == null) {
+            return true;
+        }
+
+        int slot = Modifier.isStatic(patchMethod.getModifiers()) ? 0 : 1;
+        try {
+            CtClass[] paramTypes = patchMethod.getParameterTypes();
+            for (int i = 0; i < paramIndex; ++i) {
+                slot += paramTypes[i] == CtClass.longType || paramTypes[i] == CtClass.doubleType ? 2 : 1;
+            }
+        } catch (NotFoundException e) {
+            return true;
+        }
+
+        for (int i = 0; i < positions.size(); ++i) {
+            int op = opcode(i);
+            if (op == Opcode.WIDE) {
+                return true;
+            }
+            int loaded = -1;
+            if (op == Opcode.ALOAD) {
+                loaded = iterator.byteAt(positions.get(i) + 1);
+            } else if (op >= Opcode.ALOAD_0 && op <= Opcode.ALOAD_3) {
+                loaded = op - Opcode.ALOAD_0;
+            }
+            if (loaded == slot) {
+                if (i + 2 >= positions.size()
+                    || opcode(i + 1) != Opcode.ICONST_0
+                    || opcode(i + 2) < Opcode.IALOAD || opcode(i + 2) > Opcode.SALOAD) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,174 @@
+package com.evacipated.cardcrawl.modthespire.patcher;
+
+import com.evacipated.cardcrawl.modthespire.ClassHierarchy;
+import com.evacipated.cardcrawl.modthespire.finders.ExprIndex;
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+
+import java.io.PrintStream;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// State the patches of one patching run share: what the run was asked to do, which mod is being read,
+// the order patches were found in, the class hierarchy index, the locators' expression indexes,
+// the methods @SpireOverride has redirected and what the generated code was able to skip
+public class PatchContext
+{
+    // The Loader copies these in from the command line and config, everything else gets the defaults
+    private final Set<Rewrite> disabled = EnumSet.noneOf(Rewrite.class);
+    private boolean bytecodeEnums = false;
+    private boolean outlinePatches = false;
+    private boolean verifyPatches = false;
+    private boolean patchSizes = false;
+
+    private int modNum = 0;
+    private String modID = null;
+    private int patchNum = 0;
+    private ClassHierarchy hierarchy = null;
+    private final Map<CtBehavior, ExprIndex> exprIndexes = new HashMap<>();
+    // Long names of the super methods MyCodeConverter has made callable from overrides
+    private final Set<String> redirectedMethods = new HashSet<>();
+
+    private int elidedPatches = 0;
+    private int elidedEarlyReturns = 0;
+    private int elidedByRefs = 0;
+
+    public boolean uses(Rewrite rewrite)
+    {
+        return !disabled.contains(rewrite);
+    }
+
+    public void setUses(Rewrite rewrite, boolean on)
+    {
+        if (on) {
+            disabled.remove(rewrite);
+        } else {
+            disabled.add(rewrite);
+        }
+    }
+
+    // Add @SpireEnum values in the enum's bytecode instead of busting them in after loading
+    public boolean isBytecodeEnums()
+    {
+        return bytecodeEnums;
+    }
+
+    public void setBytecodeEnums(boolean bytecodeEnums)
+    {
+        this.bytecodeEnums = bytecodeEnums;
+    }
+
+    // Outline grouped Prefix/Postfix calls even when inlining them keeps the method under the JIT's limits
+    public boolean isOutlinePatches()
+    {
+        return outlinePatches;
+    }
+
+    public void setOutlinePatches(boolean outlinePatches)
+    {
+        this.outlinePatches = outlinePatches;
+    }
+
+    public boolean isVerifyPatches()
+    {
+        return verifyPatches;
+    }
+
+    public void setVerifyPatches(boolean verifyPatches)
+    {
+        this.verifyPatches = verifyPatches;
+    }
+
+    // Print and write out the patched method size report
+    public boolean isPatchSizes()
+    {
+        return patchSizes;
+    }
+
+    public void setPatchSizes(boolean patchSizes)
+    {
+        this.patchSizes = patchSizes;
+    }
+
+    public void setModID(String id)
+    {
+        modID = id;
+    }
+
+    public void nextMod()
+    {
+        ++modNum;
+    }
+
+    int modNum()
+    {
+        return modNum;
+    }
+
+    String modID()
+    {
+        return modID;
+    }
+
+    int nextPatchNum()
+    {
+        return patchNum++;
+    }
+
+    public ClassHierarchy getHierarchy()
+    {
+        return hierarchy;
+    }
+
+    public void setHierarchy(ClassHierarchy hierarchy)
+    {
+        this.hierarchy = hierarchy;
+    }
+
+    public ExprIndex getExprIndex(CtBehavior ctBehavior) throws CannotCompileException
+    {
+        return ExprIndex.of(ctBehavior, exprIndexes);
+    }
+
+    public void invalidateExprIndex(CtBehavior ctBehavior)
+    {
+        exprIndexes.remove(ctBehavior);
+    }
+
+    public void clearExprIndexes()
+    {
+        exprIndexes.clear();
+    }
+
+    public Set<String> getRedirectedMethods()
+    {
+        return redirectedMethods;
+    }
+
+    void elidedPatch()
+    {
+        ++elidedPatches;
+    }
+
+    void elidedEarlyReturn()
+    {
+        ++elidedEarlyReturns;
+    }
+
+    void elidedByRef()
+    {
+        ++elidedByRefs;
+    }
+
+    public void printReport(PrintStream out)
+    {
+        if (elidedPatches + elidedEarlyReturns + elidedByRefs > 0) {
+            out.println("Skipped " + elidedPatches + " empty patch(es), "
+                + elidedEarlyReturns + " SpireReturn check(s), "
+                + elidedByRefs + " unused ByRef write-back(s)");
+        }
+    }
+}
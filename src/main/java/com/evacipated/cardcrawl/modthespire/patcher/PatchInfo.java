@@ -7,12 +7,15 @@ import javassist.*;
 import javassist.bytecode.annotation.AnnotationImpl;
 
 import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
 
 public abstract class PatchInfo
 {
-    private static int modNum = 0;
-
+    PatchContext context;
     private int modOrder;
+    private String mod;
+    private int patchOrder;
     SpirePatch patch;
     CtBehavior ctMethodToPatch;
     CtMethod patchMethod;
@@ -21,7 +24,25 @@ public abstract class PatchInfo
     {
         this.ctMethodToPatch = ctMethodToPatch;
         this.patchMethod = patchMethod;
-        this.modOrder = modNum;
+    }
+
+    // Records which mod this patch came from and the order it was found in
+    public PatchInfo attach(PatchContext context)
+    {
+        this.context = context;
+        this.modOrder = context.modNum();
+        this.mod = context.modID();
+        this.patchOrder = context.nextPatchNum();
+        return this;
+    }
+
+    // Patches created outside a patching run get a context of their own
+    PatchContext context()
+    {
+        if (context == null) {
+            context = new PatchContext();
+        }
+        return context;
     }
 
     public PatchInfo setSpirePatch(SpirePatch patch)
@@ -48,9 +69,22 @@ public abstract class PatchInfo
 
     protected abstract String debugMsg();
 
-    public static void nextMod()
+    // The patches this applies, more than one for a batch or group
+    List<? extends PatchInfo> members()
+    {
+        return Collections.singletonList(this);
+    }
+
+    // Method this patch changes, null for patches on a whole class
+    public CtBehavior methodToPatch()
+    {
+        return ctMethodToPatch;
+    }
+
+    // Class this patch changes
+    String targetClassName()
     {
-        ++modNum;
+        return ctMethodToPatch.getDeclaringClass().getName();
     }
 
     final public int modOrdering()
@@ -58,6 +92,30 @@ public abstract class PatchInfo
         return modOrder;
     }
 
+    final public String modID()
+    {
+        return mod;
+    }
+
+    // Order in which the patch was found, used as the final tie-breaker
+    final int discoveryOrdering()
+    {
+        return patchOrder;
+    }
+
+    // Stable description of this patch, independent of object identity
+    String sortKey()
+    {
+        StringBuilder sb = new StringBuilder(patchClassName());
+        if (ctMethodToPatch != null) {
+            sb.append(' ').append(ctMethodToPatch.getLongName());
+        }
+        if (patchMethod != null) {
+            sb.append(' ').append(patchMethod.getName());
+        }
+        return sb.toString();
+    }
+
     final public boolean isSpirePatch2()
     {
         if (patch == null) {
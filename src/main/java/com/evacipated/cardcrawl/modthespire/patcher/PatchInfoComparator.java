@@ -7,6 +7,8 @@ public class PatchInfoComparator implements Comparator<PatchInfo>
     // Ordering:
     //   Insert, Instrument, Replace, Prefix, Postfix, Raw
     //   Then sorted by mod load order
+    //   Then by patch class/target/method and discovery order, so the order never
+    //   depends on object identity
     @Override
     public int compare(PatchInfo o1, PatchInfo o2)
     {
@@ -20,6 +22,11 @@ public class PatchInfoComparator implements Comparator<PatchInfo>
             return modOrdering;
         }
 
-        return o1.toString().compareTo(o2.toString());
+        int keyOrdering = o1.sortKey().compareTo(o2.sortKey());
+        if (keyOrdering != 0) {
+            return keyOrdering;
+        }
+
+        return Integer.compare(o1.discoveryOrdering(), o2.discoveryOrdering());
     }
 }
@@ -0,0 +1,180 @@
+package com.evacipated.cardcrawl.modthespire.patcher;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import javassist.CtBehavior;
+import javassist.bytecode.CodeAttribute;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Bytecode size of every patched method before and after patching, and how many bytes each mod added.
+// HotSpot won't inline methods bigger than MaxInlineSize (or FreqInlineSize when hot),
+// and won't JIT compile methods bigger than HugeMethodLimit at all,
+// so a patch pushing a game method over one of those can quietly cost a lot
+public class PatchSizeReport
+{
+    public static final String REPORT_FILE = "mts-patch-sizes.json";
+    static final String CORE = "ModTheSpire";
+
+    private enum Threshold
+    {
+        MaxInlineSize(35),
+        FreqInlineSize(325),
+        HugeMethodLimit(8000);
+
+        final int size;
+
+        Threshold(int size)
+        {
+            this.size = size;
+        }
+    }
+
+    private final Map<CtBehavior, MethodSize> methods = new LinkedHashMap<>();
+    private int pending = 0;
+
+    // Written out as JSON
+    private static class MethodSize
+    {
+        final String method;
+        final int before;
+        int after;
+        final List<String> crosses = new ArrayList<>();
+        final Map<String, Integer> mods = new LinkedHashMap<>();
+
+        MethodSize(String method, int before)
+        {
+            this.method = method;
+            this.before = before;
+            this.after = before;
+        }
+    }
+
+    private static class Report
+    {
+        final Map<String, Integer> thresholds = new LinkedHashMap<>();
+        final List<MethodSize> methods;
+
+        Report(List<MethodSize> methods)
+        {
+            for (Threshold t : Threshold.values()) {
+                thresholds.put(t.name(), t.size);
+            }
+            this.methods = methods;
+        }
+    }
+
+    private static int codeLength(CtBehavior ctBehavior)
+    {
+        CodeAttribute ca = ctBehavior.getMethodInfo2().getCodeAttribute();
+        return ca == null ? 0 : ca.getCodeLength();
+    }
+
+    public void before(PatchInfo p)
+    {
+        if (p.ctMethodToPatch == null) {
+            return;
+        }
+        pending = codeLength(p.ctMethodToPatch);
+        methods.computeIfAbsent(p.ctMethodToPatch, k -> new MethodSize(k.getLongName(), pending));
+    }
+
+    public void after(PatchInfo p)
+    {
+        if (p.ctMethodToPatch == null) {
+            return;
+        }
+        MethodSize size = methods.get(p.ctMethodToPatch);
+        size.after = codeLength(p.ctMethodToPatch);
+        size.mods.merge(modName(p), size.after - pending, Integer::sum);
+    }
+
+    // A batch of Instruments or group of Prefixes/Postfixes can come from several mods, its bytes are credited to all of them together
+    static String modName(PatchInfo p)
+    {
+        Set<String> mods = new LinkedHashSet<>();
+        for (PatchInfo member : p.members()) {
+            mods.add(member.modID() == null ? CORE : member.modID());
+        }
+        return String.join("+", mods);
+    }
+
+    static boolean crossesLimit(int before, int after)
+    {
+        for (Threshold t : Threshold.values()) {
+            if (before <= t.size && after > t.size) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<MethodSize> crossing()
+    {
+        List<MethodSize> ret = new ArrayList<>();
+        for (MethodSize size : methods.values()) {
+            size.crosses.clear();
+            for (Threshold t : Threshold.values()) {
+                if (size.before <= t.size && size.after > t.size) {
+                    size.crosses.add(t.name());
+                }
+            }
+            if (!size.crosses.isEmpty()) {
+                ret.add(size);
+            }
+        }
+        return ret;
+    }
+
+    // Methods only pushed over MaxInlineSize are counted rather than listed, unless debugging,
+    // almost any patch on a small method does that
+    // written: whether the full report is also going to REPORT_FILE
+    public void printReport(PrintStream out, boolean verbose, boolean written)
+    {
+        int smallOnly = 0;
+        for (MethodSize size : crossing()) {
+            if (!verbose && size.crosses.size() == 1 && size.crosses.get(0).equals(Threshold.MaxInlineSize.name())) {
+                ++smallOnly;
+                continue;
+            }
+            StringBuilder sb = new StringBuilder("WARNING: Patching grew ")
+                .append(size.method).append(" from ").append(size.before).append(" to ").append(size.after)
+                .append(" bytes, over ").append(String.join(", ", size.crosses)).append(" (");
+            boolean first = true;
+            for (Map.Entry<String, Integer> mod : size.mods.entrySet()) {
+                if (!first) {
+                    sb.append(", ");
+                }
+                first = false;
+                sb.append(mod.getKey()).append(mod.getValue() < 0 ? " " : " +").append(mod.getValue());
+            }
+            out.println(sb.append(")"));
+        }
+        if (smallOnly > 0) {
+            out.println(smallOnly + " patched method(s) grew over MaxInlineSize, "
+                + (written ? "see " + REPORT_FILE : "run with --patch-sizes to list them in " + REPORT_FILE));
+        }
+    }
+
+    public void write(Path file) throws IOException
+    {
+        crossing();
+        Gson gson = new GsonBuilder()
+            .setPrettyPrinting()
+            .create();
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            gson.toJson(new Report(new ArrayList<>(methods.values())), out);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.evacipated.cardcrawl.modthespire.patcher;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Time spent on each patch, override, compiled class and initializer, credited to the mod responsible.
+// When turned off, start() and the record calls return straight away and nothing is kept
+public class PatchTimingReport
+{
+    public static final String REPORT_FILE = "mts-timings.json";
+
+    private boolean enabled;
+    private final Map<List<String>, Step> steps = new LinkedHashMap<>();
+    // Class name -> mods whose patches changed it, compiling it is credited to them
+    private final Map<String, Set<String>> touchedBy = new HashMap<>();
+
+    // Written out as JSON
+    private static class Step
+    {
+        final String phase;
+        final String mod;
+        final String name;
+        int count = 0;
+        long nanos = 0;
+
+        Step(String phase, String mod, String name)
+        {
+            this.phase = phase;
+            this.mod = mod;
+            this.name = name;
+        }
+    }
+
+    private static class Report
+    {
+        final Map<String, Long> mods;
+        final List<Step> steps;
+
+        Report(Map<String, Long> mods, List<Step> steps)
+        {
+            this.mods = mods;
+            this.steps = steps;
+        }
+    }
+
+    public PatchTimingReport(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public long start()
+    {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public synchronized void record(String phase, String mod, String name, long start)
+    {
+        if (!enabled) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        Step step = steps.computeIfAbsent(Arrays.asList(phase, mod, name), k -> new Step(phase, mod, name));
+        ++step.count;
+        step.nanos += nanos;
+    }
+
+    public void patched(PatchInfo p, long start)
+    {
+        if (!enabled) {
+            return;
+        }
+        String mod = PatchSizeReport.modName(p);
+        String kind = p.getClass().getSimpleName().replace("PatchInfo", "");
+        record(kind, mod, p.sortKey(), start);
+        for (PatchInfo member : p.members()) {
+            touched(member.targetClassName(), PatchSizeReport.modName(member));
+            touched(member.patchClassName(), PatchSizeReport.modName(member));
+        }
+    }
+
+    public void touched(String className, String mod)
+    {
+        if (!enabled) {
+            return;
+        }
+        touchedBy.computeIfAbsent(className, k -> new LinkedHashSet<>()).add(mod == null ? PatchSizeReport.CORE : mod);
+    }
+
+    public void compiled(String className, long start)
+    {
+        if (!enabled) {
+            return;
+        }
+        Set<String> mods = touchedBy.get(className);
+        record("compile", mods == null ? "-" : String.join("+", mods), className, start);
+    }
+
+    private List<Step> sorted()
+    {
+        List<Step> ret = new ArrayList<>(steps.values());
+        ret.sort((a, b) -> Long.compare(b.nanos, a.nanos));
+        return ret;
+    }
+
+    private Map<String, Long> modTotals()
+    {
+        Map<String, Long> totals = new HashMap<>();
+        for (Step step : steps.values()) {
+            totals.merge(step.mod, step.nanos, Long::sum);
+        }
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(totals.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        Map<String, Long> ret = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries) {
+            ret.put(entry.getKey(), entry.getValue());
+        }
+        return ret;
+    }
+
+    private static double ms(long nanos)
+    {
+        return nanos / 1000000.0;
+    }
+
+    public void printReport(PrintStream out, int top)
+    {
+        if (!enabled || steps.isEmpty()) {
+            return;
+        }
+        out.println("Time by mod:");
+        int i = 0;
+        for (Map.Entry<String, Long> entry : modTotals().entrySet()) {
+            if (i++ >= top) {
+                break;
+            }
+            out.printf("%10.1fms  %s%n", ms(entry.getValue()), entry.getKey());
+        }
+        out.println("Slowest steps:");
+        i = 0;
+        for (Step step : sorted()) {
+            if (i++ >= top) {
+                break;
+            }
+            out.printf("%10.1fms  %-12s %s  %s%s%n", ms(step.nanos), step.phase, step.mod, step.name,
+                step.count > 1 ? " (x" + step.count + ")" : "");
+        }
+        out.println("Full timings in " + REPORT_FILE);
+    }
+
+    public void write(Path file) throws IOException
+    {
+        if (!enabled) {
+            return;
+        }
+        Gson gson = new GsonBuilder()
+            .setPrettyPrinting()
+            .create();
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            gson.toJson(new Report(modTotals(), sorted()), out);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.evacipated.cardcrawl.modthespire.patcher;
+
+import com.evacipated.cardcrawl.modthespire.Loader;
+import javassist.CtClass;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.analysis.Analyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs javassist's type-flow analysis over every method of a patched class before it's loaded,
+// so bytecode a patch broke is reported against its class and method up front instead of
+// as a VerifyError whenever the game first touches the class
+public class PatchVerifier
+{
+    // One message per method that failed, empty if the class is fine
+    public static List<String> verify(CtClass ctClass)
+    {
+        List<String> errors = new ArrayList<>();
+        Analyzer analyzer = new Analyzer();
+        for (Object o : ctClass.getClassFile2().getMethods()) {
+            MethodInfo methodInfo = (MethodInfo) o;
+            try {
+                analyzer.analyze(ctClass, methodInfo);
+            } catch (BadBytecode e) {
+                errors.add(ctClass.getName() + "." + methodInfo.getName() + methodInfo.getDescriptor() + ": " + e.getMessage());
+            } catch (RuntimeException e) {
+                // Usually a class the method refers to isn't there, e.g. from a mod that isn't loaded
+                if (Loader.DEBUG) {
+                    System.out.println("Couldn't verify " + ctClass.getName() + "." + methodInfo.getName() + ": " + e);
+                }
+            }
+        }
+        return errors;
+    }
+}
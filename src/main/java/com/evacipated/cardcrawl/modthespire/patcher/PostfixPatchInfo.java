@@ -53,6 +53,13 @@ public class PostfixPatchInfo extends ParameterPatchInfo
         ctMethodToPatch.insertAfter(src);
     }
 
+    // Replacing the return value has to be done in the patched method itself
+    @Override
+    boolean canOutline()
+    {
+        return !returnsValue && super.canOutline();
+    }
+
     protected class PostfixParamTransformer extends ParamTransformer
     {
         protected PostfixParamTransformer(ParamInfo src, ParamInfo dest)
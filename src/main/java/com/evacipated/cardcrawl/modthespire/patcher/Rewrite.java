@@ -0,0 +1,22 @@
+package com.evacipated.cardcrawl.modthespire.patcher;
+
+// Ways the patcher cuts down on the work or the code of applying patches without changing
+// what they do. All are on normally, turning one off in a run's PatchContext takes the code
+// path from before it so the output can be compared against the plain one
+public enum Rewrite
+{
+    // Locators match against one shared index of each method's expressions
+    EXPR_INDEX,
+    // All Instrument patches on a method run in a single pass
+    BATCHED_INSTRUMENTS,
+    // Each superclass is instrumented once for all the @SpireOverrides on it
+    SUPERCLASS_OVERRIDES,
+    // Insert patch source is compiled once for all of its lines
+    MULTI_INSERT,
+    // Empty patches, unneeded SpireReturn checks and ByRef write-backs are left out
+    ELISION,
+    // Prefix and Postfix calls can be moved into helpers on the patched class
+    OUTLINING,
+    // Toggleable patches are called through invokedynamic
+    TOGGLE_LINKING,
+}
@@ -0,0 +1,169 @@
+package com.evacipated.cardcrawl.modthespire.patcher.javassist;
+
+import javassist.CannotCompileException;
+import javassist.bytecode.CodeIterator;
+import javassist.expr.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+
+// Runs several ExprEditors over a method in a single pass.
+// Each expression is offered to the editors in order. Once one of them replaces it,
+// the remaining editors are run over the replacement code instead, which is exactly
+// what they would see if each editor instrumented the method on its own.
+public class ChainedExprEditor extends ExprEditor
+{
+    // Package-private parts of javassist's Expr, as of javassist 3.22.0-GA (see pom.xml).
+    // Check they still exist and do the same thing before moving to another javassist version
+    private static final Method edited;
+    private static final Method runEditor;
+    private static final Field iterator;
+
+    static
+    {
+        try {
+            edited = Expr.class.getDeclaredMethod("edited");
+            edited.setAccessible(true);
+            iterator = Expr.class.getDeclaredField("iterator");
+            iterator.setAccessible(true);
+            runEditor = Expr.class.getDeclaredMethod("runEditor", ExprEditor.class, CodeIterator.class);
+            runEditor.setAccessible(true);
+        } catch (NoSuchFieldException | NoSuchMethodException e) {
+            throw new IllegalStateException("javassist.expr.Expr has changed, ChainedExprEditor needs updating", e);
+        }
+    }
+
+    private final ExprEditor[] editors;
+    private final int first;
+
+    public ChainedExprEditor(List<ExprEditor> editors)
+    {
+        this(editors.toArray(new ExprEditor[0]), 0);
+    }
+
+    private ChainedExprEditor(ExprEditor[] editors, int first)
+    {
+        this.editors = editors;
+        this.first = first;
+    }
+
+    // One of the chained editors failed, getEditor() is its position in the list given
+    public static class EditorException extends CannotCompileException
+    {
+        private final int editor;
+
+        EditorException(int editor, Throwable cause)
+        {
+            super(cause);
+            this.editor = editor;
+        }
+
+        public int getEditor()
+        {
+            return editor;
+        }
+    }
+
+    private interface Edit<T extends Expr>
+    {
+        void edit(ExprEditor editor, T expr) throws CannotCompileException;
+    }
+
+    private <T extends Expr> void chain(T expr, Edit<T> edit) throws CannotCompileException
+    {
+        for (int i = first; i < editors.length; ++i) {
+            try {
+                edit.edit(editors[i], expr);
+            } catch (CannotCompileException | RuntimeException e) {
+                throw new EditorException(i, e);
+            }
+            if (edited(expr)) {
+                if (i + 1 < editors.length) {
+                    runRemaining(expr, new ChainedExprEditor(editors, i + 1));
+                }
+                return;
+            }
+        }
+    }
+
+    private static boolean edited(Expr expr) throws CannotCompileException
+    {
+        try {
+            return (Boolean) edited.invoke(expr);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    // Same as Expr.replace(String, ExprEditor), but after the replacement has already been made
+    private static void runRemaining(Expr expr, ExprEditor remaining) throws CannotCompileException
+    {
+        try {
+            runEditor.invoke(expr, remaining, iterator.get(expr));
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof CannotCompileException) {
+                throw (CannotCompileException) e.getCause();
+            }
+            throw new CannotCompileException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    @Override
+    public void edit(NewExpr e) throws CannotCompileException
+    {
+        chain(e, (editor, expr) -> editor.edit(expr));
+    }
+
+    @Override
+    public void edit(NewArray a) throws CannotCompileException
+    {
+        chain(a, (editor, expr) -> editor.edit(expr));
+    }
+
+    @Override
+    public void edit(MethodCall m) throws CannotCompileException
+    {
+        chain(m, (editor, expr) -> editor.edit(expr));
+    }
+
+    @Override
+    public void edit(ConstructorCall c) throws CannotCompileException
+    {
+        chain(c, (editor, expr) -> editor.edit(expr));
+    }
+
+    @Override
+    public void edit(FieldAccess f) throws CannotCompileException
+    {
+        chain(f, (editor, expr) -> editor.edit(expr));
+    }
+
+    @Override
+    public void edit(Instanceof i) throws CannotCompileException
+    {
+        chain(i, (editor, expr) -> editor.edit(expr));
+    }
+
+    @Override
+    public void edit(Cast c) throws CannotCompileException
+    {
+        chain(c, (editor, expr) -> editor.edit(expr));
+    }
+
+    // Handlers can't be replaced, only added to, so every editor sees every handler
+    @Override
+    public void edit(Handler h) throws CannotCompileException
+    {
+        for (int i = first; i < editors.length; ++i) {
+            try {
+                editors[i].edit(h);
+            } catch (CannotCompileException | RuntimeException e) {
+                throw new EditorException(i, e);
+            }
+        }
+    }
+}
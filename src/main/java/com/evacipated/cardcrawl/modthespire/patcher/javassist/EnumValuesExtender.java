@@ -0,0 +1,115 @@
+package com.evacipated.cardcrawl.modthespire.patcher.javassist;
+
+import javassist.*;
+import javassist.bytecode.*;
+import javassist.compiler.CompileError;
+import javassist.compiler.Javac;
+
+import java.util.Collection;
+
+// Adds new values to an enum by rewriting its static initializer, so they're
+// created and added to $VALUES the same way javac's own values are.
+// The new static fields must already exist on the enum.
+// Switch maps don't need changing, javac sizes them from values() when they're first used
+public class EnumValuesExtender
+{
+    private static final String VALUES_FIELD = "$VALUES";
+
+    // Only plain enums can be extended: no constant-specific bodies (abstract enum class)
+    // and a (String, int) constructor for the new values
+    public static boolean canExtend(CtClass ctEnum)
+    {
+        if (!ctEnum.isEnum() || Modifier.isAbstract(ctEnum.getModifiers())) {
+            return false;
+        }
+        try {
+            ctEnum.getDeclaredConstructor(new CtClass[]{ctEnum.getClassPool().get(String.class.getName()), CtClass.intType});
+        } catch (NotFoundException e) {
+            return false;
+        }
+        CtConstructor clinit = ctEnum.getClassInitializer();
+        return clinit != null && findValuesAssignment(ctEnum, clinit.getMethodInfo2()) >= 0;
+    }
+
+    public static void extend(CtClass ctEnum, Collection<String> names) throws CannotCompileException
+    {
+        if (names.isEmpty()) {
+            return;
+        }
+
+        String type = ctEnum.getName();
+        StringBuilder src = new StringBuilder("{\n");
+        int i = 0;
+        for (String name : names) {
+            src.append(name).append(" = new ").append(type).append("(\"").append(name).append("\", ")
+                .append(VALUES_FIELD).append(".length + ").append(i).append(");\n");
+            ++i;
+        }
+        src.append(VALUES_FIELD).append(" = (").append(type).append("[]) java.util.Arrays.copyOf(")
+            .append(VALUES_FIELD).append(", ").append(VALUES_FIELD).append(".length + ").append(names.size()).append(");\n");
+        i = names.size();
+        for (String name : names) {
+            src.append(VALUES_FIELD).append("[").append(VALUES_FIELD).append(".length - ").append(i).append("] = ").append(name).append(";\n");
+            --i;
+        }
+        src.append("}");
+
+        CtConstructor clinit = ctEnum.getClassInitializer();
+        MethodInfo methodInfo = clinit.getMethodInfo();
+        CodeAttribute ca = methodInfo.getCodeAttribute();
+        int pos = findValuesAssignment(ctEnum, methodInfo);
+        if (pos < 0) {
+            throw new CannotCompileException("No " + VALUES_FIELD + " assignment in " + type + ".<clinit>");
+        }
+
+        try {
+            Javac jv = new Javac(ctEnum);
+            jv.setMaxLocals(ca.getMaxLocals());
+            jv.compileStmnt(src.toString());
+            Bytecode b = jv.getBytecode();
+            if (b.getMaxLocals() > ca.getMaxLocals()) {
+                ca.setMaxLocals(b.getMaxLocals());
+            }
+            if (b.getMaxStack() > ca.getMaxStack()) {
+                ca.setMaxStack(b.getMaxStack());
+            }
+
+            // Right after $VALUES is first set, before any other static init code can use it
+            CodeIterator iterator = ca.iterator();
+            pos = iterator.insertAt(pos, b.get());
+            iterator.insert(b.getExceptionTable(), pos);
+            methodInfo.rebuildStackMapIf6(ctEnum.getClassPool(), ctEnum.getClassFile2());
+        } catch (CompileError | BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    // Position of the instruction after the only putstatic $VALUES, or -1
+    private static int findValuesAssignment(CtClass ctEnum, MethodInfo methodInfo)
+    {
+        CodeAttribute ca = methodInfo.getCodeAttribute();
+        if (ca == null) {
+            return -1;
+        }
+        ConstPool cp = methodInfo.getConstPool();
+        CodeIterator iterator = ca.iterator();
+        int found = -1;
+        try {
+            while (iterator.hasNext()) {
+                int pos = iterator.next();
+                if (iterator.byteAt(pos) == Opcode.PUTSTATIC) {
+                    int index = iterator.u16bitAt(pos + 1);
+                    if (VALUES_FIELD.equals(cp.getFieldrefName(index)) && ctEnum.getName().equals(cp.getFieldrefClassName(index))) {
+                        if (found >= 0) {
+                            return -1;
+                        }
+                        found = iterator.lookAhead();
+                    }
+                }
+            }
+        } catch (BadBytecode e) {
+            return -1;
+        }
+        return found;
+    }
+}
@@ -0,0 +1,84 @@
+package com.evacipated.cardcrawl.modthespire.patcher.javassist;
+
+import javassist.*;
+import javassist.bytecode.*;
+import javassist.compiler.CompileError;
+import javassist.compiler.Javac;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Same as calling CtBehavior.insertAt(line, src) for each line, but the source is only
+// compiled once for every distinct set of local variables in scope at the insert points,
+// and the stack map is only rebuilt once at the end
+public class MultiInsertAt
+{
+    public static void insertAt(CtBehavior ctBehavior, int[] lines, String src) throws CannotCompileException
+    {
+        CtClass cc = ctBehavior.getDeclaringClass();
+        MethodInfo methodInfo = ctBehavior.getMethodInfo();
+        CodeAttribute ca = methodInfo.getCodeAttribute();
+        if (ca == null) {
+            throw new CannotCompileException("no method body");
+        }
+
+        Map<String, Bytecode> compiled = new HashMap<>();
+        try {
+            for (int line : lines) {
+                LineNumberAttribute ainfo = (LineNumberAttribute) ca.getAttribute(LineNumberAttribute.tag);
+                if (ainfo == null) {
+                    throw new CannotCompileException("no line number info");
+                }
+                int index = ainfo.toNearPc(line).index;
+
+                String locals = localsInScope(ca, index);
+                Bytecode b = compiled.get(locals);
+                if (b == null) {
+                    Javac jv = new Javac(cc);
+                    jv.recordLocalVariables(ca, index);
+                    jv.recordParams(ctBehavior.getParameterTypes(), Modifier.isStatic(ctBehavior.getModifiers()));
+                    jv.setMaxLocals(ca.getMaxLocals());
+                    jv.compileStmnt(src);
+                    b = jv.getBytecode();
+                    compiled.put(locals, b);
+                }
+
+                // Temporaries of an earlier insert are dead by the time a later one runs,
+                // so reusing their slots is fine
+                if (b.getMaxLocals() > ca.getMaxLocals()) {
+                    ca.setMaxLocals(b.getMaxLocals());
+                }
+                if (b.getMaxStack() > ca.getMaxStack()) {
+                    ca.setMaxStack(b.getMaxStack());
+                }
+
+                CodeIterator iterator = ca.iterator();
+                index = iterator.insertAt(index, b.get());
+                iterator.insert(b.getExceptionTable(), index);
+            }
+            methodInfo.rebuildStackMapIf6(cc.getClassPool(), cc.getClassFile2());
+        } catch (NotFoundException | CompileError | BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    // The local variables Javac.recordLocalVariables would record at pc
+    private static String localsInScope(CodeAttribute ca, int pc)
+    {
+        LocalVariableAttribute va = (LocalVariableAttribute) ca.getAttribute(LocalVariableAttribute.tag);
+        if (va == null) {
+            return "";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < va.tableLength(); ++i) {
+            int start = va.startPc(i);
+            if (start <= pc && pc < start + va.codeLength(i)) {
+                sb.append(va.index(i)).append(' ')
+                    .append(va.variableName(i)).append(' ')
+                    .append(va.descriptor(i)).append(';');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -12,11 +12,17 @@ import java.util.Set;
 
 public class MyCodeConverter extends CodeConverter
 {
-    private static Set<String> done = new HashSet<>();
+    // Super methods already redirected, shared by every converter in a patching run
+    private final Set<String> done;
 
-    public static void reset()
+    public MyCodeConverter()
     {
-        done.clear();
+        this(new HashSet<>());
+    }
+
+    public MyCodeConverter(Set<String> done)
+    {
+        this.done = done;
     }
 
     public void redirectSpecialMethodCall(CtMethod origMethod) throws CannotCompileException
@@ -0,0 +1,138 @@
+package com.evacipated.cardcrawl.modthespire.patcher.javassist;
+
+import com.evacipated.cardcrawl.modthespire.lib.SpireToggle;
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.bytecode.*;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Turns the invokestatic calls to a patch method inside a patched method into invokedynamic
+// calls bootstrapped by SpireToggle, so the patch can be switched off at runtime
+public class ToggleableCallLinker
+{
+    private static final String BOOTSTRAP_DESC = "("
+        + Descriptor.of(MethodHandles.Lookup.class.getName())
+        + Descriptor.of(String.class.getName())
+        + Descriptor.of(MethodType.class.getName())
+        + Descriptor.of(Class.class.getName())
+        + ")" + Descriptor.of(CallSite.class.getName());
+
+    // invokedynamic needs a Java 7 class file
+    public static boolean canLink(CtClass ctClass)
+    {
+        return ctClass.getClassFile2().getMajorVersion() >= ClassFile.JAVA_7;
+    }
+
+    // invokedynamic is 2 bytes longer than invokestatic
+    public static final int GROWTH = 2;
+
+    public static int countCalls(CtBehavior ctBehavior, CtMethod patchMethod) throws CannotCompileException
+    {
+        CodeAttribute ca = ctBehavior.getMethodInfo2().getCodeAttribute();
+        if (ca == null) {
+            return 0;
+        }
+        try {
+            return findCalls(ca, patchMethod).size();
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    // Positions of the invokestatic calls to patchMethod
+    private static List<Integer> findCalls(CodeAttribute ca, CtMethod patchMethod) throws BadBytecode
+    {
+        ConstPool cp = ca.getConstPool();
+        String patchClassName = patchMethod.getDeclaringClass().getName();
+        String name = patchMethod.getName();
+        String desc = patchMethod.getSignature();
+
+        List<Integer> calls = new ArrayList<>();
+        CodeIterator iterator = ca.iterator();
+        while (iterator.hasNext()) {
+            int pos = iterator.next();
+            if (iterator.byteAt(pos) == Opcode.INVOKESTATIC) {
+                int index = iterator.u16bitAt(pos + 1);
+                if (patchClassName.equals(cp.getMethodrefClassName(index))
+                    && name.equals(cp.getMethodrefName(index))
+                    && desc.equals(cp.getMethodrefType(index))) {
+                    calls.add(pos);
+                }
+            }
+        }
+        return calls;
+    }
+
+    // Returns how many calls were linked
+    public static int link(CtBehavior ctBehavior, CtMethod patchMethod) throws CannotCompileException
+    {
+        CtClass ctClass = ctBehavior.getDeclaringClass();
+        ClassFile classFile = ctClass.getClassFile();
+        MethodInfo methodInfo = ctBehavior.getMethodInfo();
+        CodeAttribute ca = methodInfo.getCodeAttribute();
+        if (ca == null) {
+            return 0;
+        }
+        ConstPool cp = methodInfo.getConstPool();
+        String patchClassName = patchMethod.getDeclaringClass().getName();
+        String name = patchMethod.getName();
+        String desc = patchMethod.getSignature();
+
+        try {
+            List<Integer> calls = findCalls(ca, patchMethod);
+            if (calls.isEmpty()) {
+                return 0;
+            }
+
+            int bootstrap = addBootstrapMethod(classFile, cp, patchClassName);
+            int indy = cp.addInvokeDynamicInfo(bootstrap, cp.addNameAndTypeInfo(name, desc));
+
+            // Last to first, so widening one call doesn't move the ones still to do
+            CodeIterator iterator = ca.iterator();
+            for (int i = calls.size() - 1; i >= 0; --i) {
+                CodeIterator.Gap gap = iterator.insertGapAt(calls.get(i), GROWTH, false);
+                int pos = gap.position + gap.length - GROWTH;
+                iterator.writeByte(Opcode.INVOKEDYNAMIC, pos);
+                iterator.write16bit(indy, pos + 1);
+                iterator.write16bit(0, pos + 3);
+            }
+            methodInfo.rebuildStackMapIf6(ctClass.getClassPool(), classFile);
+            return calls.size();
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    // Index of the SpireToggle.bootstrap entry for patchClassName in the BootstrapMethods attribute, adding it if needed
+    private static int addBootstrapMethod(ClassFile classFile, ConstPool cp, String patchClassName)
+    {
+        int handle = cp.addMethodHandleInfo(
+            ConstPool.REF_invokeStatic,
+            cp.addMethodrefInfo(cp.addClassInfo(SpireToggle.class.getName()), "bootstrap", BOOTSTRAP_DESC)
+        );
+        int[] args = new int[]{cp.addClassInfo(patchClassName)};
+
+        BootstrapMethodsAttribute attr = (BootstrapMethodsAttribute) classFile.getAttribute(BootstrapMethodsAttribute.tag);
+        BootstrapMethodsAttribute.BootstrapMethod[] methods = attr == null
+            ? new BootstrapMethodsAttribute.BootstrapMethod[0]
+            : attr.getMethods();
+        for (int i = 0; i < methods.length; ++i) {
+            if (methods[i].methodRef == handle && Arrays.equals(methods[i].arguments, args)) {
+                return i;
+            }
+        }
+
+        methods = Arrays.copyOf(methods, methods.length + 1);
+        methods[methods.length - 1] = new BootstrapMethodsAttribute.BootstrapMethod(handle, args);
+        classFile.addAttribute(new BootstrapMethodsAttribute(cp, methods));
+        return methods.length - 1;
+    }
+}
@@ -0,0 +1,33 @@
+package com.evacipated.cardcrawl.modthespire.patches;
+
+import com.evacipated.cardcrawl.modthespire.DeferredInitializers;
+import com.evacipated.cardcrawl.modthespire.lib.SpirePatch;
+import com.megacrit.cardcrawl.screens.mainMenu.MainMenuScreen;
+import com.megacrit.cardcrawl.screens.splash.SplashScreen;
+
+public class RunDeferredInitializers
+{
+    @SpirePatch(
+        clz=SplashScreen.class,
+        method="update"
+    )
+    public static class EachSplashFrame
+    {
+        public static void Prefix()
+        {
+            DeferredInitializers.runNext();
+        }
+    }
+
+    @SpirePatch(
+        clz=MainMenuScreen.class,
+        method="setMainMenuButtons"
+    )
+    public static class BeforeMainMenu
+    {
+        public static void Prefix()
+        {
+            DeferredInitializers.runAll();
+        }
+    }
+}
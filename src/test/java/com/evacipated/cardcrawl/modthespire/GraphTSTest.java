@@ -0,0 +1,222 @@
+package com.evacipated.cardcrawl.modthespire;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+// Random graphs from fixed seeds, checked against OldGraphTS and against what the edges require
+public class GraphTSTest
+{
+    private static final int RUNS = 20000;
+
+    private static class Edge
+    {
+        final int start;
+        final int end;
+        final boolean optional;
+
+        Edge(int start, int end, boolean optional)
+        {
+            this.start = start;
+            this.end = end;
+            this.optional = optional;
+        }
+    }
+
+    private static int[] shuffled(int n, Random random)
+    {
+        int[] perm = new int[n];
+        for (int i=0; i<n; ++i) {
+            perm[i] = i;
+        }
+        for (int i=n-1; i>0; --i) {
+            int j = random.nextInt(i + 1);
+            int t = perm[i];
+            perm[i] = perm[j];
+            perm[j] = t;
+        }
+        return perm;
+    }
+
+    // Edges only go forward along a shuffled order of the vertices, so there are no cycles
+    private static List<Edge> randomDag(int[] perm, int count, Random random)
+    {
+        double p = random.nextDouble() * (random.nextBoolean() ? 0.5 : 0.1);
+        List<Edge> edges = new ArrayList<>();
+        for (int i=0; i<count; ++i) {
+            for (int j=i+1; j<count; ++j) {
+                if (random.nextDouble() < p) {
+                    edges.add(new Edge(perm[i], perm[j], random.nextBoolean()));
+                    if (random.nextInt(10) == 0) {
+                        // Duplicate
+                        edges.add(new Edge(perm[i], perm[j], random.nextBoolean()));
+                    }
+                }
+            }
+        }
+        return edges;
+    }
+
+    private static GraphTS<Integer> graph(int n, List<Edge> edges)
+    {
+        GraphTS<Integer> g = new GraphTS<>();
+        for (int i=0; i<n; ++i) {
+            g.addVertex(i);
+        }
+        for (Edge e : edges) {
+            g.addEdge(e.start, e.end, e.optional);
+        }
+        return g;
+    }
+
+    private static List<Integer> oldSort(int n, List<Edge> edges)
+    {
+        OldGraphTS<Integer> g = new OldGraphTS<>();
+        for (int i=0; i<n; ++i) {
+            g.addVertex(i);
+        }
+        for (Edge e : edges) {
+            g.addEdge(e.start, e.end);
+        }
+        g.tsortStable();
+        return g.sortedArray;
+    }
+
+    private static boolean reaches(int from, int to, List<Edge> edges)
+    {
+        Set<Integer> seen = new HashSet<>();
+        Deque<Integer> todo = new ArrayDeque<>();
+        todo.add(from);
+        while (!todo.isEmpty()) {
+            int v = todo.poll();
+            for (Edge e : edges) {
+                if (e.start == v && seen.add(e.end)) {
+                    todo.add(e.end);
+                }
+            }
+        }
+        return seen.contains(to);
+    }
+
+    @Test
+    public void acyclicMatchesOld() throws CyclicDependencyException
+    {
+        Random random = new Random(7);
+        for (int run=0; run<RUNS; ++run) {
+            int n = 1 + random.nextInt(run % 10 == 0 ? 40 : 10);
+            List<Edge> edges = randomDag(shuffled(n, random), n, random);
+            if (random.nextInt(20) == 0) {
+                int v = random.nextInt(n);
+                edges.add(new Edge(v, v, random.nextBoolean()));
+            }
+            Collections.shuffle(edges, random);
+
+            GraphTS<Integer> g = graph(n, edges);
+            g.tsortStable();
+            assertEquals("run " + run, oldSort(n, edges), g.sortedArray);
+        }
+    }
+
+    @Test
+    public void requiredCycleReportsPath()
+    {
+        Random random = new Random(11);
+        for (int run=0; run<RUNS; ++run) {
+            int n = 2 + random.nextInt(10);
+            int[] perm = shuffled(n, random);
+            List<Edge> edges = randomDag(perm, n, random);
+            // A required back edge along a path of required edges
+            int from = random.nextInt(n - 1);
+            int to = from + 1 + random.nextInt(n - 1 - from);
+            for (int i=from; i<to; ++i) {
+                edges.add(new Edge(perm[i], perm[i + 1], false));
+            }
+            edges.add(new Edge(perm[to], perm[from], false));
+            Collections.shuffle(edges, random);
+
+            try {
+                graph(n, edges).tsortStable();
+                fail("run " + run + ": no cycle reported");
+            } catch (CyclicDependencyException e) {
+                // Each vertex depends on the next one by a required edge
+                List<?> cycle = e.cycle;
+                assertTrue("run " + run, cycle.size() >= 3);
+                assertEquals("run " + run, cycle.get(0), cycle.get(cycle.size() - 1));
+                assertEquals("run " + run, cycle.size() - 1, new HashSet<>(cycle).size());
+                for (int i=0; i+1<cycle.size(); ++i) {
+                    boolean found = false;
+                    for (Edge edge : edges) {
+                        found |= !edge.optional && cycle.get(i + 1).equals(edge.start) && cycle.get(i).equals(edge.end);
+                    }
+                    assertTrue("run " + run + ": " + cycle, found);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void optionalCycleKeepsEdgesOutsideIt() throws CyclicDependencyException
+    {
+        Random random = new Random(13);
+        for (int run=0; run<RUNS; ++run) {
+            int n = 2 + random.nextInt(10);
+            int[] perm = shuffled(n, random);
+            List<Edge> edges = randomDag(perm, n, random);
+            // An optional back edge, the path it closes can be a mix
+            int from = random.nextInt(n - 1);
+            int to = from + 1 + random.nextInt(n - 1 - from);
+            for (int i=from; i<to; ++i) {
+                edges.add(new Edge(perm[i], perm[i + 1], random.nextBoolean()));
+            }
+            edges.add(new Edge(perm[to], perm[from], true));
+            Collections.shuffle(edges, random);
+
+            GraphTS<Integer> g = graph(n, edges);
+            g.tsortStable();
+            List<Integer> sorted = g.sortedArray;
+            assertEquals("run " + run, n, new HashSet<>(sorted).size());
+            for (Edge e : edges) {
+                if (e.start == e.end) {
+                    continue;
+                }
+                boolean onCycle = reaches(e.end, e.start, edges);
+                if (!e.optional || !onCycle) {
+                    assertTrue("run " + run, sorted.indexOf(e.start) < sorted.indexOf(e.end));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mutualOptionalMatchesOld() throws CyclicDependencyException
+    {
+        Random random = new Random(17);
+        for (int run=0; run<RUNS; ++run) {
+            int n = 2 + random.nextInt(10);
+            int[] perm = shuffled(n, random);
+            List<Edge> edges = new ArrayList<>();
+            edges.add(new Edge(perm[0], perm[1], true));
+            edges.add(new Edge(perm[1], perm[0], true));
+
+            GraphTS<Integer> g = graph(n, edges);
+            g.tsortStable();
+            assertEquals("run " + run, oldSort(n, edges), g.sortedArray);
+        }
+    }
+
+    @Test
+    public void mutualOptionalKeepsListOrder() throws CyclicDependencyException
+    {
+        GraphTS<String> g = new GraphTS<>();
+        g.addVertex("a");
+        g.addVertex("b");
+        g.addVertex("c");
+        g.addEdge(1, 0, true);
+        g.addEdge(0, 1, true);
+        g.addEdge(2, 0, false);
+        g.tsortStable();
+        assertEquals(Arrays.asList("c", "a", "b"), g.sortedArray);
+    }
+}
@@ -0,0 +1,148 @@
+package com.evacipated.cardcrawl.modthespire;
+
+import java.util.*;
+
+// GraphTS.tsortStable from before it was rewritten, the reference GraphTSTest checks against.
+// It leaves a lone pair of vertices depending on each other where they are, but can loop forever
+// on any other cycle, so it's only run on graphs without cycles or with nothing but that pair
+class OldGraphTS<T>
+{
+    class Vertex
+    {
+        T value;
+
+        Vertex(T v) {
+            this.value = v;
+        }
+    }
+
+    private List<Vertex> vertexList;
+    private List<List<Boolean>> matrix;
+
+    public List<T> sortedArray;
+
+    public OldGraphTS()
+    {
+        vertexList = new ArrayList<>();
+        matrix = new ArrayList<>();
+        sortedArray = new ArrayList<>();
+    }
+
+    public void addVertex(T v)
+    {
+        vertexList.add(new Vertex(v));
+        List<Boolean> tmp = new ArrayList<>();
+        matrix.add(tmp);
+
+        for (List<Boolean> row : matrix) {
+            for (int i=row.size(); i<vertexList.size(); ++i) {
+                row.add(false);
+            }
+        }
+    }
+
+    public void addEdge(int start, int end)
+    {
+        matrix.get(start).set(end, true);
+    }
+
+    public void tsortStable()
+    {
+        sortedArray.clear();
+        for (Vertex v : vertexList) {
+            sortedArray.add(v.value);
+        }
+
+        int n = sortedArray.size();
+
+        Dependencies depends = new Dependencies();
+
+        boolean restart = false;
+        do {
+            restart = false;
+            for (int i=0; i<n; ++i) {
+                for (int j=0; j<i; ++j) {
+                    if (depends.doesXHaveDirectDependencyOnY(sortedArray.get(j), sortedArray.get(i))) {
+                        boolean iOnJ = depends.doesXHaveTransientDependencyOnY(sortedArray.get(j), sortedArray.get(i));
+                        boolean jOnI = depends.doesXHaveTransientDependencyOnY(sortedArray.get(i), sortedArray.get(j));
+
+                        if (!(jOnI && iOnJ)) { // not circular depend
+                            T t = sortedArray.get(i);
+                            List<Boolean> children = matrix.get(i);
+                            sortedArray.remove(i);
+                            matrix.remove(i);
+                            sortedArray.add(j, t);
+                            matrix.add(j, children);
+                            restart = true;
+                            break;
+                        }
+                    }
+                }
+                if (restart) break;
+            }
+        } while (restart);
+    }
+
+    private class Dependencies
+    {
+        class Node
+        {
+            List<T> children = new ArrayList<>();
+        }
+
+        private Map<T, Node> Nodes = new HashMap<>();
+
+        private Set<T> visitedNodes = new HashSet<>();
+
+        Dependencies()
+        {
+            for (int i=0; i<vertexList.size(); ++i) {
+                Node node = Nodes.get(vertexList.get(i).value);
+                if (node == null) {
+                    node = new Node();
+                    Nodes.put(vertexList.get(i).value, node);
+                }
+
+                for (int j=0; j<vertexList.size(); ++j) {
+                    if (i == j) continue;
+
+                    if (matrix.get(j).get(i)) {
+                        node.children.add(vertexList.get(j).value);
+                    }
+                }
+            }
+        }
+
+        boolean doesXHaveDirectDependencyOnY(T x, T y)
+        {
+            Node node = Nodes.get(x);
+            if (node != null) {
+                if (node.children.contains(y)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean doesXHaveTransientDependencyOnY(T x, T y)
+        {
+            if (!visitedNodes.add(x)) {
+                return false;
+            }
+
+            if (doesXHaveDirectDependencyOnY(x, y)) {
+                return true;
+            }
+            Node node = Nodes.get(x);
+            if (node != null) {
+                for (T t : node.children) {
+                    if (doesXHaveTransientDependencyOnY(t, y)) {
+                        return true;
+                    }
+                }
+            }
+
+            return false;
+        }
+    }
+}
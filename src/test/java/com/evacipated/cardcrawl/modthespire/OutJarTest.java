@@ -0,0 +1,158 @@
+package com.evacipated.cardcrawl.modthespire;
+
+import com.evacipated.cardcrawl.modthespire.outjar.Counter;
+import com.evacipated.cardcrawl.modthespire.outjar.CounterPatches;
+import javassist.bytecode.ClassFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.*;
+
+// --out-jar has to come out the same every time the same mods patch the same game.
+// Each run is its own JVM, so identity hash codes and anything else per-process differ between them
+public class OutJarTest
+{
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void byteIdenticalAcrossRuns() throws Exception
+    {
+        File first = patchInNewJvm("first");
+        File second = patchInNewJvm("second");
+
+        // Two runs that both patched nothing would match too
+        byte[] patched = readEntry(first, Counter.class);
+        assertFalse(Arrays.equals(readClass(Counter.class), patched));
+        Set<?> referenced = new ClassFile(new DataInputStream(new ByteArrayInputStream(patched))).getConstPool().getClassNames();
+        for (Class<?> patch : new Class<?>[]{CounterPatches.Doubling.class, CounterPatches.Logging.class, CounterPatches.Reading.class}) {
+            assertTrue(patch.getName(), referenced.contains(patch.getName().replace('.', '/')));
+        }
+
+        assertArrayEquals(Files.readAllBytes(first.toPath()), Files.readAllBytes(second.toPath()));
+    }
+
+    private File patchInNewJvm(String name) throws Exception
+    {
+        File dir = tmp.newFolder(name);
+        File out = new File(dir, "out.jar");
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), OutJarTest.class.getName(), dir.getPath(), out.getPath())
+            .redirectErrorStream(true)
+            .redirectOutput(new File(dir, "log.txt"))
+            .start();
+        int exit = process.waitFor();
+        assertEquals(new String(Files.readAllBytes(new File(dir, "log.txt").toPath())), 0, exit);
+        return out;
+    }
+
+    // One patching run: the fixtures are packed into a game jar and a mod jar,
+    // patched the way Loader does, and dumped like --out-jar
+    public static void main(String[] args) throws Exception
+    {
+        File dir = new File(args[0]);
+        File game = packJar(new File(dir, "game.jar"), Counter.class);
+        File mod = packJar(new File(dir, "mod.jar"), CounterPatches.class);
+        URL[] urls = {mod.toURI().toURL(), game.toURI().toURL()};
+
+        MTSClassLoader loader = new MTSClassLoader(emptyJar(), urls, OutJarTest.class.getClassLoader());
+        MTSClassPool pool = new MTSClassPool(loader);
+        PatchSession session = new PatchSession(new ModInfo[0], pool, "test");
+        session.setPatchingLoader(new MTSClassLoader(emptyJar(), urls, OutJarTest.class.getClassLoader()));
+        session.activate();
+
+        Patcher.indexHierarchy(session, urls);
+        Patcher.patchEnums(session, mod.toURI().toURL());
+        Patcher.extendEnums(session);
+        Patcher.injectPatches(session, Patcher.findPatches(session, new URL[]{mod.toURI().toURL()}));
+        Patcher.patchOverrides(session);
+        Patcher.finalizePatches(session);
+        Patcher.compilePatches(session, loader);
+        session.closePatchingLoader();
+
+        OutJar.dumpJar(pool, args[1]);
+    }
+
+    // Stands in for the bundled core patches. ZipOutputStream won't write a zip without entries,
+    // so this is just the end of central directory record
+    static InMemoryJar emptyJar() throws IOException
+    {
+        byte[] bytes = new byte[22];
+        bytes[0] = 'P';
+        bytes[1] = 'K';
+        bytes[2] = 5;
+        bytes[3] = 6;
+        return new InMemoryJar(new ByteArrayInputStream(bytes));
+    }
+
+    // The class and its nested and anonymous classes, read from the test classpath
+    static File packJar(File file, Class<?> cls) throws IOException
+    {
+        List<String> paths = new ArrayList<>();
+        collect(cls, paths);
+        try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(file))) {
+            for (String path : paths) {
+                jar.putNextEntry(new JarEntry(path));
+                try (InputStream is = OutJarTest.class.getClassLoader().getResourceAsStream(path)) {
+                    copy(is, jar);
+                }
+            }
+        }
+        return file;
+    }
+
+    private static void collect(Class<?> cls, List<String> paths)
+    {
+        String path = cls.getName().replace('.', '/');
+        paths.add(path + ".class");
+        for (int i=1; OutJarTest.class.getClassLoader().getResource(path + "$" + i + ".class") != null; ++i) {
+            paths.add(path + "$" + i + ".class");
+        }
+        for (Class<?> nested : cls.getDeclaredClasses()) {
+            collect(nested, paths);
+        }
+    }
+
+    private static byte[] readClass(Class<?> cls) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream is = OutJarTest.class.getClassLoader().getResourceAsStream(cls.getName().replace('.', '/') + ".class")) {
+            copy(is, bytes);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] readEntry(File jarFile, Class<?> cls) throws IOException
+    {
+        try (JarFile jar = new JarFile(jarFile)) {
+            JarEntry entry = jar.getJarEntry(cls.getName().replace('.', '/') + ".class");
+            assertNotNull(cls.getName(), entry);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (InputStream is = jar.getInputStream(entry)) {
+                copy(is, bytes);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException
+    {
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.evacipated.cardcrawl.modthespire.outjar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Stands in for a game class, OutJarTest patches it with CounterPatches
+public class Counter
+{
+    private int count = 0;
+    private final List<String> log = new ArrayList<>();
+
+    public int add(int amount)
+    {
+        log.add("add " + amount);
+        count += amount;
+        return count;
+    }
+
+    public int getCount()
+    {
+        return count;
+    }
+}
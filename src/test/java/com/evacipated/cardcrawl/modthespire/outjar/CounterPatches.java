@@ -0,0 +1,78 @@
+package com.evacipated.cardcrawl.modthespire.outjar;
+
+import com.evacipated.cardcrawl.modthespire.lib.*;
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.expr.ExprEditor;
+import javassist.expr.FieldAccess;
+
+import java.util.List;
+
+// One of each kind of patch whose output used to depend on hash codes or discovery order
+public class CounterPatches
+{
+    @SpirePatch(clz = Counter.class, method = SpirePatch.CLASS)
+    public static class Fields
+    {
+        public static SpireField<Integer> bonus = new SpireField<>(() -> 0);
+        public static SpireField<String> name = new SpireField<>(() -> "counter");
+    }
+
+    @SpirePatch(clz = Counter.class, method = "add")
+    public static class Doubling
+    {
+        public static void Prefix(Counter __instance, @ByRef int[] amount)
+        {
+            amount[0] *= 2;
+        }
+
+        public static int Postfix(int __result, Counter __instance)
+        {
+            return __result + Fields.bonus.get(__instance);
+        }
+    }
+
+    @SpirePatch(clz = Counter.class, method = "add")
+    public static class Logging
+    {
+        @SpireInsertPatch(locator = Locator.class)
+        public static void Insert(Counter __instance, int amount)
+        {
+            Fields.bonus.set(__instance, amount);
+        }
+
+        public static ExprEditor Instrument()
+        {
+            return new ExprEditor() {
+                @Override
+                public void edit(FieldAccess f) throws CannotCompileException
+                {
+                    if (f.isWriter() && f.getFieldName().equals("count")) {
+                        f.replace("$proceed($1 + 1);");
+                    }
+                }
+            };
+        }
+
+        private static class Locator extends SpireInsertLocator
+        {
+            @Override
+            public int[] Locate(CtBehavior ctMethodToPatch) throws Exception
+            {
+                return LineFinder.findInOrder(ctMethodToPatch, new Matcher.MethodCallMatcher(List.class, "add"));
+            }
+        }
+    }
+
+    @SpirePatch(clz = Counter.class, method = "getCount")
+    public static class Reading
+    {
+        public static SpireReturn<Integer> Prefix(Counter __instance)
+        {
+            if (Fields.name.get(__instance) == null) {
+                return SpireReturn.Return(-1);
+            }
+            return SpireReturn.Continue();
+        }
+    }
+}